@@ -0,0 +1,138 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2012> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.testopia;
+
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Bounded cache of rendered trend graphs, shared by all the projects. 
+ * Each entry holds the PNG image and the image map of a graph, keyed by 
+ * project, graph size, trend window and version of the trend index. A 
+ * graph is only rendered again when a build is added to or removed from 
+ * the trend, or when it was evicted from the cache.</p>
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 1.4
+ */
+public final class GraphCache {
+
+	/**
+	 * Maximum number of graphs kept in the cache.
+	 */
+	public static final int MAX_ENTRIES = 64;
+	
+	private static final GraphCache INSTANCE = new GraphCache(MAX_ENTRIES);
+	
+	private final Map<String, Graph> graphs;
+	
+	/**
+	 * @param maxEntries maximum number of graphs kept in the cache
+	 */
+	GraphCache(final int maxEntries) {
+		this.graphs = new LinkedHashMap<String, Graph>(16, 0.75f, true) {
+			private static final long serialVersionUID = -2817369473261384932L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Graph> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+	
+	/**
+	 * @return the graph cache
+	 */
+	public static GraphCache get() {
+		return INSTANCE;
+	}
+	
+	/**
+	 * @param projectName project full name
+	 * @param width graph width
+	 * @param height graph height
+	 * @param window number of builds in the trend
+	 * @param version version of the trend index, see {@link TrendIndex#getVersion()}
+	 * @return cache key
+	 */
+	public static String key(String projectName, int width, int height, int window, long version) {
+		return projectName + '|' + width + 'x' + height + '|' + window + '|' + version;
+	}
+	
+	/**
+	 * @param key
+	 * @return the cached graph, or <code>null</code>
+	 */
+	public synchronized Graph getGraph(String key) {
+		return graphs.get(key);
+	}
+	
+	/**
+	 * @param key
+	 * @param graph
+	 */
+	public synchronized void putGraph(String key, Graph graph) {
+		graphs.put(key, graph);
+	}
+	
+	/**
+	 * Removes all the graphs.
+	 */
+	public synchronized void clear() {
+		graphs.clear();
+	}
+	
+	/**
+	 * Rendered graph, with its PNG image and its image map.
+	 */
+	public static class Graph {
+		private final byte[] png;
+		private final String map;
+		private final Calendar timestamp;
+		public Graph(byte[] png, String map) {
+			this.png = png;
+			this.map = map;
+			this.timestamp = Calendar.getInstance();
+		}
+		/**
+		 * @return the PNG image
+		 */
+		public byte[] getPng() {
+			return png;
+		}
+		/**
+		 * @return the image map
+		 */
+		public String getMap() {
+			return map;
+		}
+		/**
+		 * @return when the graph was rendered
+		 */
+		public Calendar getTimestamp() {
+			return timestamp;
+		}
+	}
+
+}
@@ -1,6 +1,5 @@
 package jenkins.plugins.testopia;
 
-import hudson.util.ChartUtil.NumberOnlyBuildLabel;
 import hudson.util.ColorPalette;
 import hudson.util.ShiftedCategoryAxis;
 import hudson.util.StackedAreaRenderer2;
@@ -92,28 +91,25 @@ public class GraphHelper
 
 		@Override
 		public String generateURL(CategoryDataset dataset, int row, int column) {
-			NumberOnlyBuildLabel label = (NumberOnlyBuildLabel) dataset.getColumnKey(column);
+			TrendIndex.Entry entry = (TrendIndex.Entry) dataset.getColumnKey(column);
             //return  label.build.getNumber() + "/" + PluginImpl.URL + "/";
-			return  label.build.getNumber() + "/" + TestopiaBuildAction.URL_NAME;
+			return  entry.getBuildNumber() + "/" + TestopiaBuildAction.URL_NAME;
         }
 
           @Override
         public String generateToolTip(CategoryDataset dataset, int row, int column) 
         {
-              NumberOnlyBuildLabel label = (NumberOnlyBuildLabel) dataset.getColumnKey(column);
-              TestopiaBuildAction build = label.build.getAction(TestopiaBuildAction.class);
-              TestopiaResult result = build.getResult();
-              Report report = result.getReport();
+              TrendIndex.Entry entry = (TrendIndex.Entry) dataset.getColumnKey(column);
               
               switch (row) {
                   case 0:
-                	  return String.valueOf(report.getBlocked()) + " Blocked";
+                	  return String.valueOf(entry.getBlocked()) + " Blocked";
                   case 1:
-                	  return String.valueOf(report.getFailed()) + " Failed";
+                	  return String.valueOf(entry.getFailed()) + " Failed";
                   case 2:
-                	  return String.valueOf(report.getNotRun()) + " Not Run";
+                	  return String.valueOf(entry.getNotRun()) + " Not Run";
                   case 3:
-                	  return String.valueOf(report.getPassed()) + " Passed";
+                	  return String.valueOf(entry.getPassed()) + " Passed";
                   default:
                      return "";
               }
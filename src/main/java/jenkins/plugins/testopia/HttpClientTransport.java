@@ -0,0 +1,531 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2012> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.testopia;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.input.CountingInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+import org.apache.xmlrpc.XmlRpcException;
+import org.apache.xmlrpc.XmlRpcRequest;
+import org.apache.xmlrpc.client.XmlRpcClient;
+import org.apache.xmlrpc.client.XmlRpcClientException;
+import org.apache.xmlrpc.client.XmlRpcHttpClientConfig;
+import org.apache.xmlrpc.client.XmlRpcHttpTransport;
+import org.apache.xmlrpc.client.XmlRpcHttpTransportException;
+import org.apache.xmlrpc.client.XmlRpcTransport;
+import org.apache.xmlrpc.client.XmlRpcTransportFactoryImpl;
+import org.apache.xmlrpc.common.XmlRpcStreamRequestConfig;
+import org.xml.sax.SAXException;
+
+/**
+ * <p>XML-RPC transport over the pooled HTTP client of a 
+ * {@link TestopiaConnectionPool}. The request is written to a buffer and 
+ * posted with a known content length, and the response is fully consumed 
+ * before the connection goes back to the pool, so it can be kept alive and 
+ * reused by the next request.</p>
+ * 
+ * <p>Cookies, like the Bugzilla login cookies, are kept in the 
+ * {@link TestopiaSession} of the pool, shared by all the connections to the 
+ * installation. When a request is rejected because the session expired, 
+ * the transport logs in again and retries the request once.</p>
+ * 
+ * <p>Calls failing with a transient error are retried following the 
+ * {@link TestopiaRetryPolicy} of the pool, and fail fast while the 
+ * {@link TestopiaCircuitBreaker} of the pool is open. What was retried is 
+ * counted in the {@link Retries} of the factory.</p>
+ * 
+ * <p>Gzip compression is handled here rather than by the XML-RPC client, 
+ * following the compression settings of the pool, so the size of the 
+ * messages before and after compression is counted in the {@link Traffic} 
+ * of the factory.</p>
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 1.4
+ */
+public class HttpClientTransport extends XmlRpcHttpTransport {
+
+	private static final String TRANSPORT_USER_AGENT = XmlRpcHttpTransport.USER_AGENT + " (Apache HttpClient Transport)";
+	
+	private final Factory factory;
+	private HttpPost post;
+	private CloseableHttpResponse response;
+	private boolean compressingRequest;
+	private CountingInputStream wireInput;
+	private CountingInputStream rawInput;
+	
+	/**
+	 * @param factory transport factory
+	 */
+	public HttpClientTransport(Factory factory) {
+		super(factory.getClient(), TRANSPORT_USER_AGENT);
+		this.factory = factory;
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.apache.xmlrpc.client.XmlRpcHttpTransport#sendRequest(org.apache.xmlrpc.XmlRpcRequest)
+	 */
+	@Override
+	public Object sendRequest(XmlRpcRequest request) throws XmlRpcException {
+		final TestopiaCircuitBreaker circuitBreaker = factory.getPool().getCircuitBreaker();
+		final TestopiaRetryPolicy retryPolicy = factory.getPool().getRetryPolicy();
+		final String method = request.getMethodName();
+		int retry = 0;
+		while(true) {
+			if(!circuitBreaker.allowRequest()) {
+				factory.getRetries().rejected();
+				throw new XmlRpcClientException("Testopia server at " + factory.getPool().getUrl() + 
+						" is unavailable, call to " + method + " not sent", null);
+			}
+			try {
+				final Object result = this.sendAuthenticated(request);
+				circuitBreaker.recordSuccess();
+				if(retry > 0) {
+					factory.getRetries().recovered();
+				}
+				return result;
+			} catch (XmlRpcException e) {
+				if(!TestopiaRetryPolicy.isTransient(e)) {
+					// Testopia answered, so the server is up
+					circuitBreaker.recordSuccess();
+					throw e;
+				}
+				circuitBreaker.recordFailure();
+				if(retry >= retryPolicy.getMaxRetries()) {
+					if(retry > 0) {
+						factory.getRetries().failed();
+					}
+					throw e;
+				}
+			} catch (RuntimeException e) {
+				circuitBreaker.recordFailure();
+				throw e;
+			}
+			retry++;
+			factory.getRetries().retried(method);
+			try {
+				Thread.sleep(retryPolicy.getDelay(retry));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new XmlRpcClientException("Interrupted while waiting to retry " + method, e);
+			}
+		}
+	}
+	
+	/**
+	 * Sends a request to Testopia, logging in again and retrying once if the 
+	 * session is no longer valid.
+	 * @param request XML-RPC request
+	 * @return the result
+	 * @throws XmlRpcException
+	 */
+	private Object sendAuthenticated(XmlRpcRequest request) throws XmlRpcException {
+		final TestopiaSession session = factory.getPool().getSession();
+		final int generation = session.getGeneration();
+		try {
+			return this.sendCompressed(request);
+		} catch (XmlRpcException e) {
+			if(TestopiaSession.LOGIN_METHOD.equals(request.getMethodName()) || 
+					!TestopiaSession.isAuthenticationFailure(e) || 
+					!session.relogin(factory.getClient(), generation)) {
+				throw e;
+			}
+		}
+		return this.sendCompressed(request);
+	}
+	
+	/**
+	 * Sends a request to Testopia, compressed if the pool says so. When the 
+	 * server rejects a request compressed after auto-detection, the request 
+	 * is sent again uncompressed.
+	 * @param request XML-RPC request
+	 * @return the result
+	 * @throws XmlRpcException
+	 */
+	private Object sendCompressed(XmlRpcRequest request) throws XmlRpcException {
+		final boolean compress = factory.getPool().isCompressingRequests();
+		try {
+			return this.send(request, compress);
+		} catch (XmlRpcHttpTransportException e) {
+			if(!compress || !factory.getPool().compressedRequestRejected(e.getStatusCode())) {
+				throw e;
+			}
+		}
+		return this.send(request, false);
+	}
+	
+	/**
+	 * Sends a request to Testopia.
+	 * @param request XML-RPC request
+	 * @param compress whether to gzip the request
+	 * @return the result
+	 * @throws XmlRpcException
+	 */
+	private Object send(XmlRpcRequest request, boolean compress) throws XmlRpcException {
+		this.compressingRequest = compress;
+		final XmlRpcHttpClientConfig config = (XmlRpcHttpClientConfig) request.getConfig();
+		post = new HttpPost(config.getServerURL().toString());
+		final RequestConfig.Builder requestConfig = RequestConfig.custom();
+		if(config.getConnectionTimeout() > 0) {
+			requestConfig.setConnectTimeout(config.getConnectionTimeout());
+			requestConfig.setConnectionRequestTimeout(config.getConnectionTimeout());
+		}
+		if(config.getReplyTimeout() > 0) {
+			requestConfig.setSocketTimeout(config.getReplyTimeout());
+		}
+		post.setConfig(requestConfig.build());
+		return super.sendRequest(request);
+	}
+	
+	/**
+	 * Sets a request header. The content length and transfer encoding are 
+	 * set by HttpClient from the entity, which fails if they are already 
+	 * present.
+	 */
+	@Override
+	protected void setRequestHeader(String header, String value) {
+		if("Content-Length".equalsIgnoreCase(header) || "Transfer-Encoding".equalsIgnoreCase(header)) {
+			return;
+		}
+		post.setHeader(header, value);
+	}
+	
+	/**
+	 * The content length is set by HttpClient from the entity, after the 
+	 * request is compressed.
+	 */
+	@Override
+	protected void setContentLength(int length) {
+	}
+	
+	/**
+	 * Asks for a gzip response when the pool says so. The request encoding 
+	 * is set when the request is written.
+	 */
+	@Override
+	protected void setCompressionHeaders(XmlRpcHttpClientConfig config) {
+		if(factory.getPool().isRequestingGzip()) {
+			this.setRequestHeader("Accept-Encoding", "gzip");
+		}
+	}
+	
+	/**
+	 * The request is compressed when it is written, not by the XML-RPC client.
+	 */
+	@Override
+	protected boolean isCompressingRequest(XmlRpcStreamRequestConfig config) {
+		return false;
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.apache.xmlrpc.client.XmlRpcStreamTransport#writeRequest(org.apache.xmlrpc.client.XmlRpcStreamTransport.ReqWriter)
+	 */
+	@Override
+	protected void writeRequest(ReqWriter writer) throws XmlRpcException, IOException, SAXException {
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		writer.write(buffer);
+		byte[] body = buffer.toByteArray();
+		final int rawLength = body.length;
+		if(compressingRequest) {
+			final ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(32, rawLength / 4));
+			final GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+			gzip.write(body);
+			gzip.close();
+			body = compressed.toByteArray();
+			this.setRequestHeader("Content-Encoding", "gzip");
+		}
+		factory.getTraffic().addRequest(rawLength, body.length);
+		post.setEntity(new ByteArrayEntity(body));
+		response = factory.getPool().getHttpClient().execute(post, factory.getContext());
+		final int status = response.getStatusLine().getStatusCode();
+		if(status < 200 || status > 299) {
+			throw new XmlRpcHttpTransportException(status, response.getStatusLine().getReasonPhrase());
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.apache.xmlrpc.client.XmlRpcStreamTransport#getInputStream()
+	 */
+	@Override
+	protected InputStream getInputStream() throws XmlRpcException {
+		final HttpEntity entity = response.getEntity();
+		if(entity == null) {
+			throw new XmlRpcClientException("Empty response from the Testopia server", null);
+		}
+		try {
+			wireInput = new CountingInputStream(entity.getContent());
+			if(this.isResponseGzipped()) {
+				factory.getPool().gzipResponseReceived();
+				rawInput = new CountingInputStream(new GZIPInputStream(wireInput));
+			} else {
+				rawInput = wireInput;
+			}
+			return rawInput;
+		} catch (IOException e) {
+			throw new XmlRpcClientException("I/O error in server communication: " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * The response is decompressed by {@link #getInputStream()}, not by the 
+	 * XML-RPC client.
+	 */
+	@Override
+	protected boolean isResponseGzipCompressed(XmlRpcStreamRequestConfig config) {
+		return false;
+	}
+	
+	private boolean isResponseGzipped() {
+		final Header header = response.getFirstHeader("Content-Encoding");
+		return header != null && "gzip".equalsIgnoreCase(header.getValue());
+	}
+	
+	/**
+	 * Consumes what is left of the response, so the connection goes back 
+	 * to the pool instead of being closed.
+	 */
+	@Override
+	protected void close() throws XmlRpcClientException {
+		if(rawInput != null) {
+			factory.getTraffic().addResponse(rawInput.getByteCount(), wireInput.getByteCount());
+			rawInput = null;
+			wireInput = null;
+		}
+		if(response != null) {
+			try {
+				EntityUtils.consume(response.getEntity());
+				response.close();
+			} catch (IOException e) {
+				throw new XmlRpcClientException("Failed to release the connection: " + e.getMessage(), e);
+			} finally {
+				response = null;
+			}
+		} else if(post != null) {
+			post.releaseConnection();
+		}
+	}
+	
+	/**
+	 * Size of the messages exchanged with Testopia, before and after 
+	 * compression.
+	 */
+	public static class Traffic {
+		private final AtomicLong requestBytes = new AtomicLong(0L);
+		private final AtomicLong requestWireBytes = new AtomicLong(0L);
+		private final AtomicLong responseBytes = new AtomicLong(0L);
+		private final AtomicLong responseWireBytes = new AtomicLong(0L);
+		void addRequest(long raw, long wire) {
+			requestBytes.addAndGet(raw);
+			requestWireBytes.addAndGet(wire);
+		}
+		void addResponse(long raw, long wire) {
+			responseBytes.addAndGet(raw);
+			responseWireBytes.addAndGet(wire);
+		}
+		/**
+		 * Adds the traffic of another connection to this one.
+		 * @param other
+		 */
+		public void add(Traffic other) {
+			this.addRequest(other.getRequestBytes(), other.getRequestWireBytes());
+			this.addResponse(other.getResponseBytes(), other.getResponseWireBytes());
+		}
+		/**
+		 * @return bytes sent, before compression
+		 */
+		public long getRequestBytes() {
+			return requestBytes.get();
+		}
+		/**
+		 * @return bytes sent on the wire
+		 */
+		public long getRequestWireBytes() {
+			return requestWireBytes.get();
+		}
+		/**
+		 * @return bytes received, after decompression
+		 */
+		public long getResponseBytes() {
+			return responseBytes.get();
+		}
+		/**
+		 * @return bytes received on the wire
+		 */
+		public long getResponseWireBytes() {
+			return responseWireBytes.get();
+		}
+	}
+	
+	/**
+	 * Calls retried after a transient failure, and calls rejected while the 
+	 * circuit breaker was open.
+	 */
+	public static class Retries {
+		private final Map<String, AtomicInteger> retriesByMethod = new TreeMap<String, AtomicInteger>();
+		private final AtomicInteger recovered = new AtomicInteger(0);
+		private final AtomicInteger failed = new AtomicInteger(0);
+		private final AtomicInteger rejected = new AtomicInteger(0);
+		void retried(String method) {
+			synchronized(retriesByMethod) {
+				AtomicInteger count = retriesByMethod.get(method);
+				if(count == null) {
+					count = new AtomicInteger(0);
+					retriesByMethod.put(method, count);
+				}
+				count.incrementAndGet();
+			}
+		}
+		void recovered() {
+			recovered.incrementAndGet();
+		}
+		void failed() {
+			failed.incrementAndGet();
+		}
+		void rejected() {
+			rejected.incrementAndGet();
+		}
+		/**
+		 * Adds the retries of another connection to this one.
+		 * @param other
+		 */
+		public void add(Retries other) {
+			for(Map.Entry<String, Integer> entry : other.getRetriesByMethod().entrySet()) {
+				for(int i = 0; i < entry.getValue(); i++) {
+					this.retried(entry.getKey());
+				}
+			}
+			recovered.addAndGet(other.getRecovered());
+			failed.addAndGet(other.getFailed());
+			rejected.addAndGet(other.getRejected());
+		}
+		/**
+		 * @return number of retries by XML-RPC method
+		 */
+		public Map<String, Integer> getRetriesByMethod() {
+			final Map<String, Integer> copy = new TreeMap<String, Integer>();
+			synchronized(retriesByMethod) {
+				for(Map.Entry<String, AtomicInteger> entry : retriesByMethod.entrySet()) {
+					copy.put(entry.getKey(), entry.getValue().get());
+				}
+			}
+			return copy;
+		}
+		/**
+		 * @return total number of retries
+		 */
+		public int getRetries() {
+			int total = 0;
+			for(Integer count : this.getRetriesByMethod().values()) {
+				total += count;
+			}
+			return total;
+		}
+		/**
+		 * @return number of calls that succeeded after being retried
+		 */
+		public int getRecovered() {
+			return recovered.get();
+		}
+		/**
+		 * @return number of calls that failed after all the retries
+		 */
+		public int getFailed() {
+			return failed.get();
+		}
+		/**
+		 * @return number of calls that failed fast, as the circuit breaker was open
+		 */
+		public int getRejected() {
+			return rejected.get();
+		}
+	}
+	
+	/**
+	 * Creates transports for an XML-RPC client, sharing the cookies of the 
+	 * session of the pool.
+	 */
+	public static class Factory extends XmlRpcTransportFactoryImpl {
+		private final TestopiaConnectionPool pool;
+		private final HttpClientContext context;
+		private final Traffic traffic = new Traffic();
+		private final Retries retries = new Retries();
+		/**
+		 * @param client XML-RPC client
+		 * @param pool connection pool of the Testopia installation
+		 */
+		public Factory(XmlRpcClient client, TestopiaConnectionPool pool) {
+			super(client);
+			this.pool = pool;
+			this.context = HttpClientContext.create();
+			this.context.setCookieStore(pool.getSession().getCookieStore());
+		}
+		/**
+		 * @return the connection pool
+		 */
+		public TestopiaConnectionPool getPool() {
+			return pool;
+		}
+		/**
+		 * @return the traffic of the transports of this factory
+		 */
+		public Traffic getTraffic() {
+			return traffic;
+		}
+		/**
+		 * @return the calls retried by the transports of this factory
+		 */
+		public Retries getRetries() {
+			return retries;
+		}
+		/**
+		 * @return the HTTP context, with the cookies
+		 */
+		public HttpClientContext getContext() {
+			return context;
+		}
+		/* (non-Javadoc)
+		 * @see org.apache.xmlrpc.client.XmlRpcTransportFactory#getTransport()
+		 */
+		public XmlRpcTransport getTransport() {
+			return new HttpClientTransport(this);
+		}
+	}
+	
+}
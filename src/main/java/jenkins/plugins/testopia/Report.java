@@ -23,15 +23,35 @@
  */
 package jenkins.plugins.testopia;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
-import java.util.LinkedList;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import jenkins.plugins.testopia.result.TestCaseWrapper;
 
+import org.mozilla.testopia.model.Status;
+
 /**
  * Build Report.
  * 
+ * <p>The test cases of the report are kept in two parallel columns, one with 
+ * the test case IDs and another with their status IDs. The columns are not 
+ * serialized with the build, they are saved in a separate file in the build 
+ * directory instead (see {@link #save(File)} and {@link #load(File)}). Only 
+ * the counters and the run, build and environment IDs are kept inline.</p>
+ * 
  * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
  * @since 0.1
  */
@@ -39,19 +59,81 @@ public class Report implements Serializable {
 
 	private static final long serialVersionUID = 3686192971774873173L;
 	
+	/**
+	 * Name of the report file, in the build directory.
+	 */
+	public static final String FILE_NAME = "testopia-report.dat";
+	
+	private static final int MAGIC = 0x54505254; // TPRT
+	private static final int VERSION = 1;
+	private static final int INITIAL_CAPACITY = 16;
+	/**
+	 * Size of the file header: magic, version, counters, IDs and count.
+	 */
+	private static final int HEADER_SIZE = 10 * 4;
+	
 	private int passed 	= 0;
 	private int failed 	= 0;
 	private int blocked	= 0;
 	private int notRun	= 0;
+	
+	private int runId	= 0;
+	private int buildId	= 0;
+	private int envId	= 0;
 
-	private final List<TestCaseWrapper> testCases;
+	/**
+	 * Test case IDs. <code>null</code> when the test cases were not loaded.
+	 */
+	private transient int[] ids;
+	/**
+	 * Status IDs of the test cases, in the same order of the IDs.
+	 */
+	private transient byte[] statuses;
+	/**
+	 * Number of test cases in the columns.
+	 */
+	private transient int size;
+	/**
+	 * Test cases, as persisted by older versions of the plug-in. Moved into 
+	 * the columns when the report is loaded.
+	 */
+	private List<TestCaseWrapper> testCases;
+	/**
+	 * Whether the test cases were migrated from an older version, and 
+	 * still have to be saved into the report file.
+	 */
+	private transient boolean migrated;
 
 	/**
 	 * Default constructor.
 	 */
 	Report() {
 		super();
-		this.testCases = new LinkedList<TestCaseWrapper>();
+		this.ids = new int[INITIAL_CAPACITY];
+		this.statuses = new byte[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Creates a report without test cases.
+	 * @param report report to copy the counters and IDs from
+	 */
+	private Report(Report report) {
+		super();
+		this.passed = report.passed;
+		this.failed = report.failed;
+		this.blocked = report.blocked;
+		this.notRun = report.notRun;
+		this.runId = report.runId;
+		this.buildId = report.buildId;
+		this.envId = report.envId;
+	}
+
+	/**
+	 * @return a copy of this report with the counters only, without the 
+	 * test cases
+	 */
+	public Report getSummary() {
+		return new Report(this);
 	}
 
 	/**
@@ -125,35 +207,265 @@ public class Report implements Serializable {
 	 * @return the buildId
 	 */
 	public int getBuildId() {
-		return (this.testCases != null && this.testCases.size() > 0 ? this.testCases.get(0).getBuildId() : 0);
+		return buildId;
 	}
 
 	/**
 	 * @return the envId
 	 */
 	public int getEnvId() {
-		return (this.testCases != null && this.testCases.size() > 0 ? this.testCases.get(0).getEnvId() : 0);
+		return envId;
 	}
 	
 	/**
 	 * @return the runId
 	 */
 	public int getRunId() {
-		return (this.testCases != null && this.testCases.size() > 0 ? this.testCases.get(0).getRunId() : 0);
+		return runId;
 	}
 
 	/**
 	 * @param testCase
 	 */
 	public void addTestCase(TestCaseWrapper testCase) {
-		this.testCases.add(testCase);
+		if(this.size == 0) {
+			this.runId = testCase.getRunId() != null ? testCase.getRunId() : 0;
+			this.buildId = testCase.getBuildId() != null ? testCase.getBuildId() : 0;
+			this.envId = testCase.getEnvId() != null ? testCase.getEnvId() : 0;
+		}
+		this.addTestCase(testCase.getId(), testCase.getStatusId());
+	}
+	
+	private void addTestCase(Integer id, Integer statusId) {
+		if(this.ids == null) {
+			this.ids = new int[INITIAL_CAPACITY];
+			this.statuses = new byte[INITIAL_CAPACITY];
+		}
+		if(this.size == this.ids.length) {
+			final int capacity = this.ids.length * 2;
+			final int[] newIds = new int[capacity];
+			final byte[] newStatuses = new byte[capacity];
+			System.arraycopy(this.ids, 0, newIds, 0, this.size);
+			System.arraycopy(this.statuses, 0, newStatuses, 0, this.size);
+			this.ids = newIds;
+			this.statuses = newStatuses;
+		}
+		this.ids[this.size] = id != null ? id : 0;
+		this.statuses[this.size] = (byte) (statusId != null ? statusId : 0);
+		this.size += 1;
+	}
+	
+	/**
+	 * @return <code>true</code> if the test cases of this report are loaded
+	 */
+	public boolean isLoaded() {
+		return this.ids != null;
+	}
+	
+	/**
+	 * @return <code>true</code> if the test cases were migrated from an 
+	 * older version and were not saved into the report file yet
+	 */
+	public boolean isMigrated() {
+		return migrated;
+	}
+	
+	/**
+	 * @return the number of test cases in the report
+	 */
+	public int getTestCaseCount() {
+		return this.ids != null ? this.size : 0;
+	}
+	
+	/**
+	 * @param index
+	 * @return the ID of the test case at the given index
+	 */
+	public int getTestCaseId(int index) {
+		return this.ids[index];
+	}
+	
+	/**
+	 * @param index
+	 * @return the status ID of the test case at the given index
+	 */
+	public int getStatusId(int index) {
+		return this.statuses[index];
 	}
 	
 	/**
-	 * @return the testCases
+	 * @return the testCases, derived from the columns
 	 */
 	public List<TestCaseWrapper> getTestCases() {
-		return testCases;
+		if(this.ids == null) {
+			return Collections.emptyList();
+		}
+		final int count = this.size;
+		return new AbstractList<TestCaseWrapper>() {
+			@Override
+			public TestCaseWrapper get(int index) {
+				if(index < 0 || index >= count) {
+					throw new IndexOutOfBoundsException(Integer.toString(index));
+				}
+				final TestCaseWrapper testCase = new TestCaseWrapper();
+				testCase.setId(ids[index]);
+				testCase.setStatusId((int) statuses[index]);
+				testCase.setRunId(runId);
+				testCase.setBuildId(buildId);
+				testCase.setEnvId(envId);
+				return testCase;
+			}
+			@Override
+			public int size() {
+				return count;
+			}
+		};
+	}
+	
+	/**
+	 * Saves the report, with its test cases, into a file.
+	 * 
+	 * @param file report file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(passed);
+			out.writeInt(failed);
+			out.writeInt(blocked);
+			out.writeInt(notRun);
+			out.writeInt(runId);
+			out.writeInt(buildId);
+			out.writeInt(envId);
+			final int count = this.getTestCaseCount();
+			out.writeInt(count);
+			for(int i = 0; i < count; i++) {
+				out.writeInt(ids[i]);
+			}
+			out.write(statuses, 0, count);
+		} finally {
+			out.close();
+		}
+		this.migrated = false;
+	}
+	
+	/**
+	 * Loads a report, with its test cases, from a file.
+	 * 
+	 * @param file report file
+	 * @return report
+	 * @throws IOException if the file cannot be read or is not a report file
+	 */
+	public static Report load(File file) throws IOException {
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if(in.readInt() != MAGIC) {
+				throw new IOException("Not a Testopia report file: " + file);
+			}
+			final int version = in.readInt();
+			if(version != VERSION) {
+				throw new IOException("Unsupported Testopia report file version " + version + ": " + file);
+			}
+			final Report report = new Report();
+			report.passed = in.readInt();
+			report.failed = in.readInt();
+			report.blocked = in.readInt();
+			report.notRun = in.readInt();
+			report.runId = in.readInt();
+			report.buildId = in.readInt();
+			report.envId = in.readInt();
+			final int count = in.readInt();
+			report.ids = new int[count];
+			report.statuses = new byte[count];
+			for(int i = 0; i < count; i++) {
+				report.ids[i] = in.readInt();
+			}
+			in.readFully(report.statuses);
+			report.size = count;
+			return report;
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Loads a page of test cases from a report file. Only the status column 
+	 * and the IDs of the test cases in the page are read.
+	 * 
+	 * @param file report file
+	 * @param start index of the first test case, among the ones with the status
+	 * @param limit maximum number of test cases in the page
+	 * @param status status of the test cases, or <code>null</code> for all
+	 * @return page of test cases
+	 * @throws IOException if the file cannot be read or is not a report file
+	 */
+	public static TestCasePage loadPage(File file, int start, int limit, Status status) throws IOException {
+		final RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			if(in.readInt() != MAGIC) {
+				throw new IOException("Not a Testopia report file: " + file);
+			}
+			final int version = in.readInt();
+			if(version != VERSION) {
+				throw new IOException("Unsupported Testopia report file version " + version + ": " + file);
+			}
+			in.seek(HEADER_SIZE - 4);
+			final int count = in.readInt();
+			final byte[] statusColumn = new byte[count];
+			in.seek(HEADER_SIZE + 4L * count);
+			in.readFully(statusColumn);
+			
+			final int first = Math.max(start, 0);
+			final int max = limit > 0 ? Math.min(limit, TestCasePage.MAX_LIMIT) : TestCasePage.DEFAULT_LIMIT;
+			final List<Integer> indexes = new ArrayList<Integer>(Math.min(max, count));
+			int total = 0;
+			for(int i = 0; i < count; i++) {
+				if(status != null && statusColumn[i] != status.getValue()) {
+					continue;
+				}
+				if(total >= first && indexes.size() < max) {
+					indexes.add(i);
+				}
+				total += 1;
+			}
+			
+			final List<TestCasePage.TestCaseStatus> testCases = new ArrayList<TestCasePage.TestCaseStatus>(indexes.size());
+			if(!indexes.isEmpty()) {
+				// read the IDs between the first and the last index of the page at once
+				final int from = indexes.get(0);
+				final int to = indexes.get(indexes.size() - 1);
+				final byte[] idColumn = new byte[(to - from + 1) * 4];
+				in.seek(HEADER_SIZE + 4L * from);
+				in.readFully(idColumn);
+				final ByteBuffer ids = ByteBuffer.wrap(idColumn);
+				for(int index : indexes) {
+					testCases.add(new TestCasePage.TestCaseStatus(ids.getInt((index - from) * 4), statusColumn[index]));
+				}
+			}
+			return new TestCasePage(first, max, status, total, testCases);
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Moves the test cases persisted by older versions into the columns.
+	 * @return this
+	 */
+	private Object readResolve() {
+		if(this.testCases != null) {
+			this.ids = new int[Math.max(this.testCases.size(), 1)];
+			this.statuses = new byte[this.ids.length];
+			for(TestCaseWrapper testCase : this.testCases) {
+				this.addTestCase(testCase);
+			}
+			this.testCases = null;
+			this.migrated = true;
+		}
+		return this;
 	}
 
 }
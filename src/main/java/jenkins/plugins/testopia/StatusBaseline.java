@@ -0,0 +1,174 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2012> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.testopia;
+
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.plugins.testopia.result.TestCaseWrapper;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * <p>Statuses of the test cases of a test run, build and environment, as 
+ * last known before the build. A test case update whose status is the same 
+ * as the one in the baseline does not need to be sent to Testopia.</p>
+ * 
+ * <p>The baseline is read from the test case runs in Testopia, or from the 
+ * report of the previous build (see {@link Source}). The test case IDs and 
+ * status IDs are kept in two parallel columns, sorted by test case ID.</p>
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 1.4
+ */
+public class StatusBaseline {
+
+	private static final Logger LOGGER = Logger.getLogger("jenkins.plugins.testopia");
+	
+	/**
+	 * Where the baseline is read from.
+	 */
+	public enum Source {
+		/**
+		 * No baseline, all the updates are sent.
+		 */
+		NONE, 
+		/**
+		 * The test case runs in Testopia, from the {@link TestRunSnapshot}.
+		 */
+		TESTOPIA, 
+		/**
+		 * The report of the previous build. Statuses changed in Testopia 
+		 * after that build are not seen.
+		 */
+		PREVIOUS_BUILD;
+		
+		/**
+		 * @param value source name, case insensitive
+		 * @return the source, or {@link #NONE} if blank or unknown
+		 */
+		public static Source parse(String value) {
+			if(StringUtils.isNotBlank(value)) {
+				try {
+					return Source.valueOf(value.trim().toUpperCase());
+				} catch (IllegalArgumentException e) {
+					LOGGER.log(Level.WARNING, "Ignoring unknown Testopia status baseline " + value);
+				}
+			}
+			return NONE;
+		}
+	}
+	
+	private final int runId;
+	private final int buildId;
+	private final int envId;
+	private final int[] ids;
+	private final int[] statuses;
+	
+	private StatusBaseline(int runId, int buildId, int envId, int[] ids, int[] statuses, int size) {
+		this.runId = runId;
+		this.buildId = buildId;
+		this.envId = envId;
+		// sort both columns by test case ID
+		final long[] pairs = new long[size];
+		for(int i = 0; i < size; i++) {
+			pairs[i] = ((long) ids[i] << 32) | (statuses[i] & 0xFFFFFFFFL);
+		}
+		Arrays.sort(pairs);
+		this.ids = new int[size];
+		this.statuses = new int[size];
+		for(int i = 0; i < size; i++) {
+			this.ids[i] = (int) (pairs[i] >> 32);
+			this.statuses[i] = (int) pairs[i];
+		}
+	}
+	
+	/**
+	 * Creates a baseline from the test case runs of a snapshot.
+	 * @param snapshot snapshot, with its test case runs loaded
+	 * @return baseline
+	 */
+	public static StatusBaseline fromSnapshot(TestRunSnapshot snapshot) {
+		final int size = snapshot.getCaseRunCount();
+		final int[] ids = new int[size];
+		final int[] statuses = new int[size];
+		for(int i = 0; i < size; i++) {
+			ids[i] = snapshot.getTestCaseId(i);
+			statuses[i] = snapshot.getStatusId(i);
+		}
+		return new StatusBaseline(snapshot.getRunId(), snapshot.getBuildId(), snapshot.getEnvId(), ids, statuses, size);
+	}
+	
+	/**
+	 * Creates a baseline from the report of a previous build.
+	 * @param report report, with its test cases loaded
+	 * @return baseline
+	 */
+	public static StatusBaseline fromReport(Report report) {
+		final int size = report.getTestCaseCount();
+		final int[] ids = new int[size];
+		final int[] statuses = new int[size];
+		for(int i = 0; i < size; i++) {
+			ids[i] = report.getTestCaseId(i);
+			statuses[i] = report.getStatusId(i);
+		}
+		return new StatusBaseline(report.getRunId(), report.getBuildId(), report.getEnvId(), ids, statuses, size);
+	}
+	
+	private static boolean equals(Integer value, int expected) {
+		return value != null && value.intValue() == expected;
+	}
+	
+	/**
+	 * @return the number of test cases in the baseline
+	 */
+	public int size() {
+		return ids.length;
+	}
+	
+	/**
+	 * Tells whether an update would leave the status of a test case as it 
+	 * is, and records the status of the update otherwise, so that a later 
+	 * update of the same test case is compared with it.
+	 * @param tc test case update
+	 * @return <code>true</code> if the update does not change the status
+	 */
+	public synchronized boolean isUnchanged(TestCaseWrapper tc) {
+		if(tc.getId() == null || tc.getStatusId() == null || !equals(tc.getRunId(), runId) || 
+				!equals(tc.getBuildId(), buildId) || !equals(tc.getEnvId(), envId)) {
+			return false;
+		}
+		final int index = Arrays.binarySearch(ids, tc.getId());
+		if(index < 0) {
+			return false;
+		}
+		if(statuses[index] == tc.getStatusId()) {
+			return true;
+		}
+		statuses[index] = tc.getStatusId();
+		return false;
+	}
+	
+}
@@ -0,0 +1,93 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2012> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.testopia;
+
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
+import hudson.model.EnvironmentContributingAction;
+
+/**
+ * Contributes the environment variables of the test case being executed 
+ * by the iterative build steps. Each thread executing build steps sees the 
+ * variables of its own test case, so that test cases can be executed in 
+ * parallel within the same build.
+ * 
+ * <p>A single instance is added to the build while iterating the test cases 
+ * and removed afterwards, so that it is neither accumulated nor persisted 
+ * with the build.</p>
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 1.4
+ */
+public class TestCaseEnvironmentAction implements EnvironmentContributingAction {
+
+	/**
+	 * Environment variables of the test case of each thread.
+	 */
+	private transient ThreadLocal<EnvVars> envVars = new ThreadLocal<EnvVars>();
+
+	/**
+	 * Sets the environment variables of the test case executed by the 
+	 * current thread.
+	 * @param envVars
+	 */
+	public void set(EnvVars envVars) {
+		this.envVars.set(envVars);
+	}
+
+	/**
+	 * Removes the environment variables of the current thread.
+	 */
+	public void remove() {
+		this.envVars.remove();
+	}
+
+	/* (non-Javadoc)
+	 * @see hudson.model.EnvironmentContributingAction#buildEnvVars(hudson.model.AbstractBuild, hudson.EnvVars)
+	 */
+	public void buildEnvVars(AbstractBuild<?, ?> build, EnvVars env) {
+		final EnvVars testCaseEnvVars = this.envVars.get();
+		if(testCaseEnvVars != null) {
+			env.putAll(testCaseEnvVars);
+		}
+	}
+
+	public String getUrlName() {
+		return null;
+	}
+
+	public String getIconFileName() {
+		return null;
+	}
+
+	public String getDisplayName() {
+		return null;
+	}
+
+	private Object readResolve() {
+		this.envVars = new ThreadLocal<EnvVars>();
+		return this;
+	}
+
+}
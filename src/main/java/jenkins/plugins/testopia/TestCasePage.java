@@ -0,0 +1,268 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2012> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.testopia;
+
+import hudson.model.Api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+import org.mozilla.testopia.model.Status;
+
+/**
+ * A page of the test cases of a report, optionally filtered by status.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 1.4
+ */
+@ExportedBean
+public class TestCasePage {
+
+	/**
+	 * Default number of test cases in a page.
+	 */
+	public static final int DEFAULT_LIMIT = 100;
+	/**
+	 * Maximum number of test cases in a page.
+	 */
+	public static final int MAX_LIMIT = 1000;
+	
+	private final int start;
+	private final int limit;
+	private final Status status;
+	private final int total;
+	private final List<TestCaseStatus> testCases;
+	
+	/**
+	 * @param report report with the test cases loaded
+	 * @param start index of the first test case, among the ones with the status
+	 * @param limit maximum number of test cases in the page
+	 * @param status status of the test cases, or <code>null</code> for all
+	 */
+	public TestCasePage(Report report, int start, int limit, Status status) {
+		this.start = Math.max(start, 0);
+		this.limit = limit > 0 ? Math.min(limit, MAX_LIMIT) : DEFAULT_LIMIT;
+		this.status = status;
+		final List<TestCaseStatus> page = new ArrayList<TestCaseStatus>(Math.min(this.limit, report.getTestCaseCount()));
+		int matches = 0;
+		for(int i = 0; i < report.getTestCaseCount(); i++) {
+			if(status != null && report.getStatusId(i) != status.getValue()) {
+				continue;
+			}
+			if(matches >= this.start && page.size() < this.limit) {
+				page.add(new TestCaseStatus(report.getTestCaseId(i), report.getStatusId(i)));
+			}
+			matches += 1;
+		}
+		this.total = matches;
+		this.testCases = Collections.unmodifiableList(page);
+	}
+	
+	/**
+	 * @param start index of the first test case, among the ones with the status
+	 * @param limit maximum number of test cases in the page
+	 * @param status status of the test cases, or <code>null</code> for all
+	 * @param total number of test cases with the status
+	 * @param testCases test cases in the page
+	 */
+	TestCasePage(int start, int limit, Status status, int total, List<TestCaseStatus> testCases) {
+		this.start = start;
+		this.limit = limit;
+		this.status = status;
+		this.total = total;
+		this.testCases = Collections.unmodifiableList(testCases);
+	}
+	
+	/**
+	 * @param value status name, case insensitive
+	 * @return the status, or <code>null</code> if the value is blank or unknown
+	 */
+	public static Status parseStatus(String value) {
+		if(value == null || value.trim().length() == 0) {
+			return null;
+		}
+		try {
+			return Status.valueOf(value.trim().toUpperCase());
+		} catch (IllegalArgumentException iae) {
+			return null;
+		}
+	}
+	
+	/**
+	 * @param value
+	 * @param defaultValue
+	 * @return the value as an int, or the default value
+	 */
+	public static int parseInt(String value, int defaultValue) {
+		if(value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException nfe) {
+			return defaultValue;
+		}
+	}
+	
+	public Api getApi() {
+		return new Api(this);
+	}
+	
+	/**
+	 * @return the start
+	 */
+	@Exported
+	public int getStart() {
+		return start;
+	}
+	
+	/**
+	 * @return the limit
+	 */
+	@Exported
+	public int getLimit() {
+		return limit;
+	}
+	
+	/**
+	 * @return the status name, or <code>null</code> when not filtered
+	 */
+	@Exported
+	public String getStatus() {
+		return status != null ? status.name() : null;
+	}
+	
+	/**
+	 * @return the number of test cases with the status
+	 */
+	@Exported
+	public int getTotal() {
+		return total;
+	}
+	
+	/**
+	 * @return <code>true</code> if there are test cases before this page
+	 */
+	public boolean isHasPrevious() {
+		return start > 0;
+	}
+	
+	/**
+	 * @return <code>true</code> if there are test cases after this page
+	 */
+	public boolean isHasNext() {
+		return start + limit < total;
+	}
+	
+	/**
+	 * @return the position of the first test case in the page, starting at one
+	 */
+	public int getFirst() {
+		return testCases.isEmpty() ? 0 : start + 1;
+	}
+	
+	/**
+	 * @return the position of the last test case in the page
+	 */
+	public int getLast() {
+		return start + testCases.size();
+	}
+	
+	/**
+	 * @return the query string of the previous page
+	 */
+	public String getPreviousQuery() {
+		return this.getQuery(Math.max(start - limit, 0));
+	}
+	
+	/**
+	 * @return the query string of the next page
+	 */
+	public String getNextQuery() {
+		return this.getQuery(start + limit);
+	}
+	
+	private String getQuery(int pageStart) {
+		final StringBuilder query = new StringBuilder("?start=").append(pageStart);
+		if(status != null) {
+			query.append("&status=").append(status.name());
+		}
+		if(limit != DEFAULT_LIMIT) {
+			query.append("&limit=").append(limit);
+		}
+		return query.toString();
+	}
+	
+	/**
+	 * @return the test cases in the page
+	 */
+	@Exported
+	public List<TestCaseStatus> getTestCases() {
+		return testCases;
+	}
+	
+	/**
+	 * Status of a test case.
+	 */
+	@ExportedBean(defaultVisibility = 2)
+	public static class TestCaseStatus {
+		private final int id;
+		private final int statusId;
+		public TestCaseStatus(int id, int statusId) {
+			this.id = id;
+			this.statusId = statusId;
+		}
+		/**
+		 * @return the test case ID
+		 */
+		@Exported
+		public int getId() {
+			return id;
+		}
+		/**
+		 * @return the status ID
+		 */
+		public int getStatusId() {
+			return statusId;
+		}
+		/**
+		 * @return the status, colored for display
+		 */
+		public String getStatusTextColored() {
+			return Utils.getExecutionStatusTextColored(statusId);
+		}
+		/**
+		 * @return the status name
+		 */
+		@Exported
+		public String getStatus() {
+			final Status s = statusId > 0 ? Status.get(statusId) : null;
+			return s != null ? s.name() : Status.IDLE.name();
+		}
+	}
+
+}
@@ -0,0 +1,223 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2012> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.testopia;
+
+import hudson.model.Hudson;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.lang.ObjectUtils;
+import org.mozilla.testopia.model.TestCase;
+import org.mozilla.testopia.model.TestRun;
+
+/**
+ * <p>On-disk cache of the test cases of the test runs of a Testopia 
+ * installation, so that builds do not download the whole test plan when it 
+ * did not change.</p>
+ * 
+ * <p>Entries are kept in {@link #DIR_NAME} in the Jenkins home, one 
+ * directory per installation and one file per test run. The test run is 
+ * always fetched, it is a small call. Its plan, plan text version and 
+ * number of test cases are compared with the cached ones, and the test 
+ * cases are downloaded again only when they differ or the entry is older 
+ * than the cache timeout of the installation. Testopia does not expose the 
+ * modification date of test cases, so edits that leave the plan text 
+ * version and the number of test cases as they are are only seen once the 
+ * entry expires.</p>
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 1.4
+ */
+public class TestRunCache {
+
+	private static final Logger LOGGER = Logger.getLogger("jenkins.plugins.testopia");
+	
+	/**
+	 * Name of the cache directory, in the Jenkins home.
+	 */
+	public static final String DIR_NAME = "testopia-cache";
+	
+	/**
+	 * Guards the cache files.
+	 */
+	private static final Object LOCK = new Object();
+	
+	private final File dir;
+	private final String url;
+	private final long timeout;
+	
+	/**
+	 * @param dir cache directory of the installation
+	 * @param url Testopia URL of the installation
+	 * @param timeout time in milliseconds an entry is used
+	 */
+	public TestRunCache(File dir, String url, long timeout) {
+		this.dir = dir;
+		this.url = url;
+		this.timeout = timeout;
+	}
+	
+	/**
+	 * @param installation Testopia installation
+	 * @return the cache of the installation, or <code>null</code> if its 
+	 * cache timeout is not set
+	 */
+	public static TestRunCache get(TestopiaInstallation installation) {
+		if(installation.getCacheTimeout() == null || installation.getCacheTimeout() <= 0) {
+			return null;
+		}
+		final File dir;
+		try {
+			dir = new File(new File(Hudson.getInstance().getRootDir(), DIR_NAME), 
+					URLEncoder.encode(installation.getName(), "UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+		return new TestRunCache(dir, installation.getUrl(), installation.getCacheTimeout() * 60L * 1000L);
+	}
+	
+	private File getFile(Integer runId) {
+		return new File(dir, "run-" + runId + ".ser.gz");
+	}
+	
+	/**
+	 * @param testRun test run, just fetched from Testopia
+	 * @return the cached test cases of the test run, or <code>null</code> if 
+	 * they are not cached, expired or the test run changed
+	 */
+	public TestCase[] get(TestRun testRun) {
+		final File file = this.getFile(testRun.getId());
+		synchronized(LOCK) {
+			if(!file.exists() || System.currentTimeMillis() - file.lastModified() > timeout) {
+				return null;
+			}
+			final Entry entry;
+			try {
+				final ObjectInputStream in = new ObjectInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))));
+				try {
+					entry = (Entry) in.readObject();
+				} finally {
+					in.close();
+				}
+			} catch (IOException e) {
+				LOGGER.log(Level.FINE, "Ignoring unreadable Testopia cache entry " + file, e);
+				return null;
+			} catch (ClassNotFoundException e) {
+				LOGGER.log(Level.FINE, "Ignoring unreadable Testopia cache entry " + file, e);
+				return null;
+			} catch (ClassCastException e) {
+				LOGGER.log(Level.FINE, "Ignoring unreadable Testopia cache entry " + file, e);
+				return null;
+			}
+			if(!ObjectUtils.equals(entry.url, url) || 
+					!ObjectUtils.equals(entry.planId, testRun.getPlanId()) || 
+					!ObjectUtils.equals(entry.planTextVersion, testRun.getPlanTextVersion()) || 
+					!ObjectUtils.equals(entry.cases, testRun.getCases())) {
+				return null;
+			}
+			return entry.testCases;
+		}
+	}
+	
+	/**
+	 * Caches the test cases of a test run, and removes the expired entries. 
+	 * A failure is logged, the cache is only an optimization.
+	 * @param testRun test run
+	 * @param testCases test cases of the test run
+	 */
+	public void put(TestRun testRun, TestCase[] testCases) {
+		if(testCases == null) {
+			return;
+		}
+		final Entry entry = new Entry(url, testRun.getPlanId(), testRun.getPlanTextVersion(), testRun.getCases(), testCases);
+		final File file = this.getFile(testRun.getId());
+		final File tmp = new File(dir, file.getName() + ".tmp");
+		synchronized(LOCK) {
+			try {
+				if(!dir.isDirectory() && !dir.mkdirs()) {
+					throw new IOException("Failed to create directory " + dir);
+				}
+				final ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(tmp))));
+				try {
+					out.writeObject(entry);
+				} finally {
+					out.close();
+				}
+				if(!tmp.renameTo(file)) {
+					// renaming over an existing file fails on some platforms
+					file.delete();
+					if(!tmp.renameTo(file)) {
+						throw new IOException("Failed to rename " + tmp + " to " + file);
+					}
+				}
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Failed to write Testopia cache entry " + file, e);
+				tmp.delete();
+			}
+			final File[] files = dir.listFiles();
+			if(files != null) {
+				for(File expired : files) {
+					if(System.currentTimeMillis() - expired.lastModified() > timeout) {
+						expired.delete();
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Cached test cases of a test run, with the values of the test run they 
+	 * were fetched with.
+	 */
+	private static class Entry implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final String url;
+		private final Integer planId;
+		private final Integer planTextVersion;
+		private final Integer cases;
+		private final TestCase[] testCases;
+		public Entry(String url, Integer planId, Integer planTextVersion, Integer cases, TestCase[] testCases) {
+			this.url = url;
+			this.planId = planId;
+			this.planTextVersion = planTextVersion;
+			this.cases = cases;
+			this.testCases = testCases;
+		}
+	}
+	
+}
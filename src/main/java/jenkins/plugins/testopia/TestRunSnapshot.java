@@ -0,0 +1,272 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2012> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.testopia;
+
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.mozilla.testopia.TestopiaAPI;
+import org.mozilla.testopia.model.TestCase;
+import org.mozilla.testopia.model.TestCaseRun;
+import org.mozilla.testopia.model.TestRun;
+
+/**
+ * <p>Test run, test cases and test case runs loaded from Testopia in bulk, 
+ * with one call each, instead of one call per test case. The snapshot is 
+ * shared by the result seekers and the publish path, through 
+ * {@link TestopiaSite#getSnapshot()}.</p>
+ * 
+ * <p>The test run and test cases are loaded at the start of the build. The 
+ * test cases may come from a {@link TestRunCache}, when the test run did 
+ * not change since they were cached. The test case runs are only needed 
+ * for the status baseline, so they are loaded on first use.</p>
+ * 
+ * <p>Only the test case runs of the build and environment of the test run 
+ * are kept, in two parallel columns sorted by test case ID: test case ID 
+ * and status ID.</p>
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 1.4
+ */
+public class TestRunSnapshot {
+
+	private static final Logger LOGGER = Logger.getLogger("jenkins.plugins.testopia");
+	
+	private final TestRun testRun;
+	private final TestCase[] testCases;
+	private final int runId;
+	private final int buildId;
+	private final int envId;
+	private TestopiaAPI api;
+	private int[] caseIds;
+	private int[] statusIds;
+	private boolean cached = false;
+	
+	/**
+	 * @param testRun test run
+	 * @param testCases test cases of the test run
+	 * @param caseRuns test case runs of the test run, or <code>null</code> if 
+	 * they could not be loaded
+	 */
+	public TestRunSnapshot(TestRun testRun, TestCase[] testCases, TestCaseRun[] caseRuns) {
+		this(null, testRun, testCases);
+		this.setCaseRuns(caseRuns);
+	}
+	
+	/**
+	 * @param api Testopia API the test case runs are loaded from, on first use
+	 * @param testRun test run
+	 * @param testCases test cases of the test run
+	 */
+	private TestRunSnapshot(TestopiaAPI api, TestRun testRun, TestCase[] testCases) {
+		this.api = api;
+		this.testRun = testRun;
+		this.testCases = testCases != null ? testCases : new TestCase[0];
+		this.runId = testRun.getId();
+		this.buildId = Integer.parseInt(testRun.getBuild());
+		this.envId = Integer.parseInt(testRun.getEnvironment());
+	}
+	
+	private void setCaseRuns(TestCaseRun[] caseRuns) {
+		if(caseRuns == null) {
+			return;
+		}
+		final TestCaseRun[] current = new TestCaseRun[caseRuns.length];
+		int size = 0;
+		for(TestCaseRun caseRun : caseRuns) {
+			if(caseRun != null && caseRun.getTestCaseId() != null && caseRun.getStatusId() != null && 
+					equals(caseRun.getRunId(), runId) && equals(caseRun.getBuildId(), buildId) && 
+					equals(caseRun.getEnvironmentId(), envId)) {
+				current[size++] = caseRun;
+			}
+		}
+		// sort the positions by test case ID
+		final long[] order = new long[size];
+		for(int i = 0; i < size; i++) {
+			order[i] = ((long) current[i].getTestCaseId() << 32) | i;
+		}
+		Arrays.sort(order);
+		this.caseIds = new int[size];
+		this.statusIds = new int[size];
+		for(int i = 0; i < size; i++) {
+			final TestCaseRun caseRun = current[(int) order[i]];
+			this.caseIds[i] = caseRun.getTestCaseId();
+			this.statusIds[i] = caseRun.getStatusId();
+		}
+	}
+	
+	/**
+	 * Loads the test run and its test cases. The test case runs are loaded 
+	 * on first use, and are only available from a 
+	 * {@link TestopiaConnection}; if they cannot be loaded, the snapshot has 
+	 * none.
+	 * @param api Testopia API
+	 * @param runId test run ID
+	 * @return snapshot
+	 * @throws RuntimeException if the test run cannot be loaded
+	 */
+	public static TestRunSnapshot load(TestopiaAPI api, Integer runId) {
+		return load(api, runId, null);
+	}
+	
+	/**
+	 * Loads the test run and its test cases. The test cases are read from 
+	 * the cache when the test run did not change.
+	 * @param api Testopia API
+	 * @param runId test run ID
+	 * @param cache cache of test cases, or <code>null</code>
+	 * @return snapshot
+	 * @throws RuntimeException if the test run cannot be loaded
+	 */
+	public static TestRunSnapshot load(TestopiaAPI api, Integer runId, TestRunCache cache) {
+		final TestRun testRun = api.getTestRun(runId);
+		if(testRun == null) {
+			throw new RuntimeException("Failed to get test run " + runId);
+		}
+		TestCase[] testCases = cache != null ? cache.get(testRun) : null;
+		if(testCases != null) {
+			final TestRunSnapshot snapshot = load(api, testRun, testCases);
+			snapshot.cached = true;
+			return snapshot;
+		}
+		testCases = api.getTestCases(runId);
+		if(cache != null) {
+			cache.put(testRun, testCases);
+		}
+		return load(api, testRun, testCases);
+	}
+	
+	/**
+	 * Creates the snapshot of a test run whose test cases are already known. 
+	 * Its test case runs are loaded on first use.
+	 * @param api Testopia API
+	 * @param testRun test run
+	 * @param testCases test cases of the test run
+	 * @return snapshot
+	 */
+	public static TestRunSnapshot load(TestopiaAPI api, TestRun testRun, TestCase[] testCases) {
+		return new TestRunSnapshot(api, testRun, testCases);
+	}
+	
+	/**
+	 * Loads the test case runs of the test run, in a single call, the first 
+	 * time they are used.
+	 */
+	private synchronized void loadCaseRuns() {
+		if(api == null) {
+			return;
+		}
+		final TestopiaAPI api = this.api;
+		this.api = null; // loaded once, even if the call fails
+		if(api instanceof TestopiaConnection) {
+			try {
+				this.setCaseRuns(((TestopiaConnection) api).getTestCaseRuns(runId));
+			} catch (RuntimeException e) {
+				LOGGER.log(Level.WARNING, e.getMessage(), e);
+			}
+		}
+	}
+	
+	private static boolean equals(Integer value, int expected) {
+		return value != null && value.intValue() == expected;
+	}
+	
+	/**
+	 * @return the test run
+	 */
+	public TestRun getTestRun() {
+		return testRun;
+	}
+	
+	/**
+	 * @return the test cases of the test run
+	 */
+	public TestCase[] getTestCases() {
+		return testCases;
+	}
+	
+	/**
+	 * @return <code>true</code> if the test cases were read from the cache
+	 */
+	public boolean isCached() {
+		return cached;
+	}
+	
+	/**
+	 * @return the test run ID
+	 */
+	public int getRunId() {
+		return runId;
+	}
+	
+	/**
+	 * @return the build ID of the test run
+	 */
+	public int getBuildId() {
+		return buildId;
+	}
+	
+	/**
+	 * @return the environment ID of the test run
+	 */
+	public int getEnvId() {
+		return envId;
+	}
+	
+	/**
+	 * Loads the test case runs, if not loaded yet.
+	 * @return <code>true</code> if the test case runs were loaded
+	 */
+	public synchronized boolean hasCaseRuns() {
+		this.loadCaseRuns();
+		return caseIds != null;
+	}
+	
+	/**
+	 * Loads the test case runs, if not loaded yet.
+	 * @return the number of test case runs, of the build and environment of the test run
+	 */
+	public synchronized int getCaseRunCount() {
+		this.loadCaseRuns();
+		return caseIds != null ? caseIds.length : 0;
+	}
+	
+	/**
+	 * @param index
+	 * @return the test case ID of the test case run at the given index
+	 */
+	public synchronized int getTestCaseId(int index) {
+		return caseIds[index];
+	}
+	
+	/**
+	 * @param index
+	 * @return the status ID of the test case run at the given index
+	 */
+	public synchronized int getStatusId(int index) {
+		return statusIds[index];
+	}
+	
+}
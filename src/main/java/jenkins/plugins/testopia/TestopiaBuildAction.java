@@ -23,19 +23,45 @@
  */
 package jenkins.plugins.testopia;
 
-import hudson.model.Action;
 import hudson.model.AbstractBuild;
+import hudson.model.Run;
+import hudson.model.RunAction;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.lang.ref.SoftReference;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.kohsuke.stapler.StaplerProxy;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
 
 /**
  * Testopia build action.
+ * 
+ * <p>Only the report counters are kept inline with the build. The test cases 
+ * are loaded from the report file in the build directory when the result is 
+ * first requested, and kept behind a soft reference, so that they can be 
+ * garbage collected and loaded again later.</p>
+ * 
+ * <p>The counters are exported in the remote API of the build, e.g. 
+ * <code>api/json?tree=actions[passed,failed,blocked,notRun]</code>, 
+ * without loading the test cases.</p>
+ * 
+ * <p>Builds of older versions of the plug-in are migrated once: the test 
+ * cases are moved into the report file and the build is saved again in the 
+ * background, without the inline result.</p>
+ * 
  * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
  * @since 0.1
  */
-public class TestopiaBuildAction implements Action, Serializable, StaplerProxy {
+@ExportedBean
+public class TestopiaBuildAction implements RunAction, Serializable, StaplerProxy {
 	/**
 	 * serialVersionUID.
 	 */
@@ -43,13 +69,39 @@ public class TestopiaBuildAction implements Action, Serializable, StaplerProxy {
 	public static final String DISPLAY_NAME = "Testopia";
 	public static final String ICON_FILE_NAME = "/plugin/testopia/icons/testopia-24x24.png";
 	public static final String URL_NAME = "testopiaResult";
+	
+	private static final Logger LOGGER = Logger.getLogger("jenkins.plugins.testopia");
+	
+	/**
+	 * Saves the migrated builds, outside of the loading of the build.
+	 */
+	private static final ExecutorService MIGRATION_SAVER = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			final Thread thread = new Thread(r, "Testopia build migration");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
 
 	private AbstractBuild<?, ?> build;
+	/**
+	 * Report counters, without the test cases.
+	 */
+	private Report report;
+	/**
+	 * Result persisted inline by older versions of the plug-in. Moved into 
+	 * the report file when the build is loaded.
+	 */
 	private TestopiaResult result;
+	/**
+	 * Result with the test cases, loaded on demand.
+	 */
+	private transient SoftReference<TestopiaResult> resultReference;
 
 	public TestopiaBuildAction(AbstractBuild<?, ?> build, TestopiaResult result) {
 		this.build = build;
-		this.result = result;
+		this.report = result.getReport().getSummary();
+		this.resultReference = new SoftReference<TestopiaResult>(result);
 	}
 
 	public String getDisplayName() {
@@ -64,8 +116,69 @@ public class TestopiaBuildAction implements Action, Serializable, StaplerProxy {
 		return URL_NAME;
 	}
 
+	/**
+	 * Returns the result with the report counters only, the result page 
+	 * reads just the requested page of test cases from the report file.
+	 */
 	public Object getTarget() {
-		return this.result;
+		if(this.result != null) {
+			return this.result;
+		}
+		return new TestopiaResult(this.report, this.build);
+	}
+
+	/* (non-Javadoc)
+	 * @see hudson.model.RunAction#onLoad()
+	 */
+	public void onLoad() {
+		if(this.result != null) {
+			final Report legacyReport = this.result.getReport();
+			final File file = this.getReportFile();
+			// the report file may exist if the build could not be saved before
+			if(legacyReport.isMigrated() && !file.exists()) {
+				try {
+					legacyReport.save(file);
+				} catch (IOException e) {
+					LOGGER.log(Level.WARNING, "Failed to save Testopia report " + file, e);
+					return;
+				}
+			}
+			this.report = legacyReport.getSummary();
+			this.result = null;
+			this.scheduleSave();
+		}
+	}
+
+	/**
+	 * Saves the build without the inline result, so that the next load does 
+	 * not read the test cases from the build again.
+	 */
+	private void scheduleSave() {
+		final AbstractBuild<?, ?> migratedBuild = this.build;
+		if(migratedBuild == null) {
+			return;
+		}
+		MIGRATION_SAVER.execute(new Runnable() {
+			public void run() {
+				try {
+					migratedBuild.save();
+				} catch (IOException e) {
+					LOGGER.log(Level.WARNING, "Failed to save migrated build " + migratedBuild, e);
+				}
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see hudson.model.RunAction#onAttached(hudson.model.Run)
+	 */
+	public void onAttached(Run r) {
+	}
+
+	/* (non-Javadoc)
+	 * @see hudson.model.RunAction#onBuildComplete()
+	 */
+	public void onBuildComplete() {
 	}
 
 	public AbstractBuild<?, ?> getBuild() {
@@ -73,20 +186,94 @@ public class TestopiaBuildAction implements Action, Serializable, StaplerProxy {
 	}
 
 	/**
-	 * @return Testopia job execution result
+	 * @return Testopia report counters, without the test cases
 	 */
-	public TestopiaResult getResult() {
-		return this.result;
+	public Report getReport() {
+		if(this.result != null) {
+			return this.result.getReport();
+		}
+		return this.report;
+	}
+
+	@Exported(visibility = 2)
+	public int getRunId() {
+		return this.getReport().getRunId();
+	}
+
+	@Exported(visibility = 2)
+	public int getBuildId() {
+		return this.getReport().getBuildId();
+	}
+
+	@Exported(visibility = 2)
+	public int getEnvId() {
+		return this.getReport().getEnvId();
+	}
+
+	@Exported(visibility = 2)
+	public int getPassed() {
+		return this.getReport().getPassed();
+	}
+
+	@Exported(visibility = 2)
+	public int getFailed() {
+		return this.getReport().getFailed();
+	}
+
+	@Exported(visibility = 2)
+	public int getBlocked() {
+		return this.getReport().getBlocked();
+	}
+
+	@Exported(visibility = 2)
+	public int getNotRun() {
+		return this.getReport().getNotRun();
+	}
+
+	@Exported(visibility = 2)
+	public int getTestsTotal() {
+		return this.getReport().getTestsTotal();
+	}
+
+	/**
+	 * @return the report file, in the build directory
+	 */
+	public File getReportFile() {
+		return new File(this.build.getRootDir(), Report.FILE_NAME);
+	}
+
+	/**
+	 * @return Testopia job execution result, with the test cases loaded
+	 */
+	public synchronized TestopiaResult getResult() {
+		if(this.result != null) {
+			return this.result;
+		}
+		TestopiaResult loaded = this.resultReference != null ? this.resultReference.get() : null;
+		if(loaded == null) {
+			Report fullReport = this.report;
+			final File file = this.getReportFile();
+			if(file.exists()) {
+				try {
+					fullReport = Report.load(file);
+				} catch (IOException e) {
+					LOGGER.log(Level.WARNING, "Failed to load Testopia report " + file, e);
+				}
+			}
+			loaded = new TestopiaResult(fullReport, this.build);
+			this.resultReference = new SoftReference<TestopiaResult>(loaded);
+		}
+		return loaded;
 	}
 
 	/**
 	 * @return Previous Testopia report
 	 */
 	private Report getPreviousReport() {
-		TestopiaResult previousResult = this.getPreviousResult();
+		TestopiaBuildAction previousAction = this.getPreviousAction();
 		Report previousReport = null;
-		if (previousResult != null) {
-			previousReport = previousResult.getReport();
+		if (previousAction != null) {
+			previousReport = previousAction.getReport();
 		}
 		return previousReport;
 	}
@@ -120,14 +307,7 @@ public class TestopiaBuildAction implements Action, Serializable, StaplerProxy {
 	 * @return Report summary
 	 */
 	public String getSummary() {
-		return Utils.createReportSummary(result.getReport(), this.getPreviousReport());
-	}
-
-	/**
-	 * @return Detailed Report summary
-	 */
-	public String getDetails() {
-		return Utils.createReportSummaryDetails(result.getReport(), this.getPreviousReport());
+		return Utils.createReportSummary(this.getReport(), this.getPreviousReport());
 	}
 
 }
@@ -24,34 +24,40 @@
 package jenkins.plugins.testopia;
 
 import hudson.AbortException;
-import hudson.EnvVars;
 import hudson.Extension;
 import hudson.Launcher;
 import hudson.model.Action;
 import hudson.model.BuildListener;
-import hudson.model.EnvironmentContributingAction;
 import hudson.model.Result;
+import hudson.model.StreamBuildListener;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.tasks.BuildStep;
 import hudson.tasks.Builder;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.net.URL;
+import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.StringTokenizer;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import jenkins.plugins.testopia.result.AliasIndex;
 import jenkins.plugins.testopia.result.ResultSeeker;
 import jenkins.plugins.testopia.result.ResultSeekerException;
 import jenkins.plugins.testopia.result.TestCaseWrapper;
 import jenkins.plugins.testopia.util.Messages;
 
-import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.mozilla.testopia.TestopiaAPI;
-import org.mozilla.testopia.model.TestRun;
 
 /**
  * Testopia Builder.
@@ -59,9 +65,6 @@ import org.mozilla.testopia.model.TestRun;
  * @since 0.1
  */
 public class TestopiaBuilder extends Builder {
-	// Used for HTTP basic auth
-	private static final String BASIC_HTTP_PASSWORD = "basicPassword";
-	
 	private static final Logger LOGGER = Logger.getLogger("jenkins.plugins.testopia");
 	
 	/**
@@ -96,6 +99,38 @@ public class TestopiaBuilder extends Builder {
 	 * List of result seeking strategies.
 	 */
 	protected List<ResultSeeker> resultSeekers;
+	/**
+	 * Maximum number of test case updates sent to Testopia in a batch.
+	 */
+	protected final Integer updateBatchSize;
+	/**
+	 * Maximum time, in seconds, between two batches of test case updates.
+	 */
+	protected final Integer updateFlushInterval;
+	/**
+	 * Number of concurrent connections used to publish test case updates.
+	 */
+	protected final Integer publisherThreads;
+	/**
+	 * Number of test cases whose iterative build steps are executed in 
+	 * parallel.
+	 */
+	protected final Integer iterationConcurrency;
+	/**
+	 * Number of builds displayed in the trend graph.
+	 */
+	protected final Integer trendWindow;
+	/**
+	 * If <code>true</code>, test case updates are written to a spool in the 
+	 * build directory, and sent to Testopia after the build.
+	 */
+	protected final Boolean spoolUpdates;
+	/**
+	 * Where the statuses compared with the test case updates are read from, 
+	 * see {@link StatusBaseline.Source}. Updates that do not change the 
+	 * status are not sent.
+	 */
+	protected final String statusBaseline;
 	/**
 	 * Le descriptor.
 	 */
@@ -112,6 +147,13 @@ public class TestopiaBuilder extends Builder {
 	 * @param afterIteratingAllTestCasesBuildSteps
 	 * @param failedTestsMarkBuildAsFailure
 	 * @param resultSeekers
+	 * @param updateBatchSize
+	 * @param updateFlushInterval
+	 * @param publisherThreads
+	 * @param iterationConcurrency
+	 * @param trendWindow
+	 * @param spoolUpdates
+	 * @param statusBaseline
 	 */
 	@DataBoundConstructor
 	public TestopiaBuilder(String testopiaInstallationName, 
@@ -121,7 +163,14 @@ public class TestopiaBuilder extends Builder {
 			List<BuildStep> iterativeBuildSteps,
 			List<BuildStep> afterIteratingAllTestCasesBuildSteps,
 			Boolean failedTestsMarkBuildAsFailure, 
-			List<ResultSeeker> resultSeekers) {
+			List<ResultSeeker> resultSeekers, 
+			Integer updateBatchSize, 
+			Integer updateFlushInterval, 
+			Integer publisherThreads, 
+			Integer iterationConcurrency, 
+			Integer trendWindow, 
+			Boolean spoolUpdates, 
+			String statusBaseline) {
 		this.testopiaInstallationName = testopiaInstallationName;
 		this.testRunId = testRunId;
 		this.singleBuildSteps = singleBuildSteps;
@@ -130,6 +179,13 @@ public class TestopiaBuilder extends Builder {
 		this.afterIteratingAllTestCasesBuildSteps = afterIteratingAllTestCasesBuildSteps;
 		this.failedTestsMarkBuildAsFailure = failedTestsMarkBuildAsFailure;
 		this.resultSeekers = resultSeekers;
+		this.updateBatchSize = updateBatchSize;
+		this.updateFlushInterval = updateFlushInterval;
+		this.publisherThreads = publisherThreads;
+		this.iterationConcurrency = iterationConcurrency;
+		this.trendWindow = trendWindow;
+		this.spoolUpdates = spoolUpdates;
+		this.statusBaseline = statusBaseline;
 	}
 	/**
 	 * @return the testopiaInstallationName
@@ -185,12 +241,54 @@ public class TestopiaBuilder extends Builder {
 	public void setResultSeekers(List<ResultSeeker> resultSeekers) {
 		this.resultSeekers = resultSeekers;
 	}
+	/**
+	 * @return the updateBatchSize
+	 */
+	public Integer getUpdateBatchSize() {
+		return updateBatchSize;
+	}
+	/**
+	 * @return the updateFlushInterval
+	 */
+	public Integer getUpdateFlushInterval() {
+		return updateFlushInterval;
+	}
+	/**
+	 * @return the publisherThreads
+	 */
+	public Integer getPublisherThreads() {
+		return publisherThreads;
+	}
+	/**
+	 * @return the iterationConcurrency
+	 */
+	public Integer getIterationConcurrency() {
+		return iterationConcurrency;
+	}
+	/**
+	 * @return the trendWindow
+	 */
+	public Integer getTrendWindow() {
+		return trendWindow;
+	}
+	/**
+	 * @return the spoolUpdates
+	 */
+	public Boolean getSpoolUpdates() {
+		return spoolUpdates;
+	}
+	/**
+	 * @return the statusBaseline
+	 */
+	public String getStatusBaseline() {
+		return statusBaseline;
+	}
 	/* (non-Javadoc)
 	 * @see hudson.tasks.BuildStepCompatibilityLayer#getProjectAction(hudson.model.AbstractProject)
 	 */
 	@Override
 	public Action getProjectAction(AbstractProject<?, ?> project) {
-		return new TestopiaProjectAction(project);
+		return new TestopiaProjectAction(project, trendWindow != null ? trendWindow : 0);
 	}
 	/**
 	 * {@inheritDoc}
@@ -205,51 +303,119 @@ public class TestopiaBuilder extends Builder {
 		if(installation == null) {
 			throw new AbortException(Messages.Testopia_Builder_InvalidInstallation());
 		}
-		if(StringUtils.isNotBlank(installation.getProperties())) {
+		if(!installation.getClientConfig().getProperties().isEmpty()) {
 			listener.getLogger().println(Messages.Testopia_Builder_PreparingConnectionProperties());
-			setProperties(installation.getProperties(), listener);
+			for(Map.Entry<String, String> property : installation.getClientConfig().getProperties().entrySet()) {
+				if(property.getKey().equals(TestopiaClientConfig.BASIC_PASSWORD)) {
+					listener.getLogger().println(Messages.Testopia_Builder_Password(property.getKey()));
+				} else {
+					listener.getLogger().println(Messages.Testopia_Builder_Setting(property.getKey(), property.getValue()));
+				}
+			}
 		}
-		TestopiaAPI api = new TestopiaAPI(new URL(installation.getUrl()));
-		String token = "";
+		TestopiaAPI api = this.connect(installation, listener);
+		final List<TestopiaAPI> openConnections = new ArrayList<TestopiaAPI>();
+		openConnections.add(api);
+		//TestRun testRun = testRunSvc.get(this.getTestRunId());
+		if(LOGGER.isLoggable(Level.FINE)) {
+			LOGGER.log(Level.FINE, Messages.Testopia_Builder_Filtering());
+		}
+		final TestRunSnapshot snapshot;
 		try {
-			token = api.login(installation.getUsername(), installation.getPassword());
-		} catch (Exception e) {
+			snapshot = TestRunSnapshot.load(api, this.getTestRunId(), TestRunCache.get(installation));
+		} catch (RuntimeException e) {
 			e.printStackTrace(listener.getLogger());
 			throw new AbortException(e.getMessage());
 		}
-		//TestRun testRun = testRunSvc.get(this.getTestRunId());
-		if(LOGGER.isLoggable(Level.FINE)) {
-			LOGGER.log(Level.FINE, Messages.Testopia_Builder_Filtering());
+		listener.getLogger().println(Messages.Testopia_Builder_Prefetched(snapshot.getTestCases().length, snapshot.getRunId()));
+		if(snapshot.isCached()) {
+			listener.getLogger().println(Messages.Testopia_Builder_CachedTestCases(snapshot.getRunId()));
 		}
-		TestRun testCaseRun = api.getTestRun(this.getTestRunId(), token);
-		TestopiaSite testopia = new TestopiaSite(api);
-		TestCaseWrapper[] testCases = testopia.getTestCases(testCaseRun, api.getTestCases(this.getTestRunId()));
-		if(LOGGER.isLoggable(Level.FINE)) {
-			for(TestCaseWrapper tc : testCases) {
-				LOGGER.log(Level.FINE, Messages.Testopia_Builder_AutomatedTestCase(tc.getId(), tc.getSummary()));
+		UpdatePublisher publisher = null;
+		UpdateSpool spool = null;
+		if(spoolUpdates != null && spoolUpdates) {
+			listener.getLogger().println(Messages.Testopia_Builder_Spooling());
+			spool = new UpdateSpool(build.getRootDir(), installation.getName());
+		} else if(publisherThreads != null && publisherThreads > 1) {
+			listener.getLogger().println(Messages.Testopia_Builder_PublisherConnections(publisherThreads));
+			final List<TestopiaAPI> connections = new ArrayList<TestopiaAPI>(publisherThreads);
+			for(int i = 0; i < publisherThreads; i++) {
+				connections.add(this.connect(installation, listener));
 			}
+			openConnections.addAll(connections);
+			publisher = new UpdatePublisher(connections);
 		}
-		// sort and filter test cases
-		listener.getLogger().println(Messages.Testopia_Builder_SingleBuildSteps());
-		this.executeSingleBuildSteps(build, launcher, listener);
-		listener.getLogger().println(Messages.Testopia_Builder_IterativeBuildSteps());
-		this.executeIterativeBuildSteps(testCases, build, launcher, listener);
-		
-		// Here we search for test results. The return if a wrapped Test Case
-		// that
-		// contains attachments, platform and notes.
+		// the publisher and the spool are closed on every path, so a failed or 
+		// aborted build step leaks neither the publisher threads nor the spool file
+		TestopiaSite testopia = null;
 		try {
-			listener.getLogger().println(Messages.Testopia_Builder_Seeking());
+			testopia = new TestopiaSite(api, 
+					updateBatchSize != null ? updateBatchSize : TestopiaSite.DEFAULT_BATCH_SIZE, 
+					updateFlushInterval != null ? updateFlushInterval * 1000L : 0L, 
+					publisher, 
+					spool, 
+					this.loadBaseline(build, snapshot, listener), 
+					snapshot);
+			TestCaseWrapper[] testCases = testopia.getTestCases(snapshot);
+			if(LOGGER.isLoggable(Level.FINE)) {
+				for(TestCaseWrapper tc : testCases) {
+					LOGGER.log(Level.FINE, Messages.Testopia_Builder_AutomatedTestCase(tc.getId(), tc.getSummary()));
+				}
+			}
+			// sort and filter test cases
+			listener.getLogger().println(Messages.Testopia_Builder_SingleBuildSteps());
+			this.executeSingleBuildSteps(build, launcher, listener);
+			listener.getLogger().println(Messages.Testopia_Builder_IterativeBuildSteps());
+			this.executeIterativeBuildSteps(testCases, build, launcher, listener);
+		
+			// Here we search for test results. The return if a wrapped Test Case
+			// that
+			// contains attachments, platform and notes.
+			try {
+				listener.getLogger().println(Messages.Testopia_Builder_Seeking());
 			
-			if(getResultSeekers() != null) {
-				for (ResultSeeker resultSeeker : getResultSeekers()) {
-					LOGGER.log(Level.INFO, Messages.Testopia_Builder_SeekingDetails(resultSeeker.getDescriptor().getDisplayName()));
-					resultSeeker.seek(testCases, build, launcher, listener, testopia);
+				if(getResultSeekers() != null) {
+					final AliasIndex automatedTestCases = new AliasIndex(testCases);
+					for (ResultSeeker resultSeeker : getResultSeekers()) {
+						LOGGER.log(Level.INFO, Messages.Testopia_Builder_SeekingDetails(resultSeeker.getDescriptor().getDisplayName()));
+						resultSeeker.seek(automatedTestCases, build, launcher, listener, testopia);
+					}
+				}
+			} catch (ResultSeekerException trse) {
+				trse.printStackTrace(listener.fatalError(trse.getMessage()));
+				throw new AbortException(Messages.Testopia_Builder_SeekingError(trse.getMessage()));
+			}
+		} finally {
+			try {
+				if(testopia != null) {
+					testopia.flush();
+				}
+			} finally {
+				try {
+					if(publisher != null) {
+						publisher.waitForCompletion();
+					}
+				} finally {
+					if(spool != null) {
+						spool.close();
+						listener.getLogger().println(Messages.Testopia_Builder_Spooled(spool.getRecords()));
+					}
 				}
 			}
-		} catch (ResultSeekerException trse) {
-			trse.printStackTrace(listener.fatalError(trse.getMessage()));
-			throw new AbortException(Messages.Testopia_Builder_SeekingError(trse.getMessage()));
+		}
+		if(testopia.getUnchangedCount() > 0) {
+			listener.getLogger().println(Messages.Testopia_Builder_Unchanged(testopia.getUnchangedCount()));
+		}
+		
+		if(!testopia.getUpdateErrors().isEmpty()) {
+			listener.getLogger().println(Messages.Testopia_Builder_UpdateErrors(testopia.getUpdateErrors().size(), testopia.getBatchCount()));
+			for(TestopiaSite.UpdateError error : testopia.getUpdateErrors()) {
+				listener.getLogger().println(Messages.Testopia_Builder_UpdateError(error.getBatch(), error.getTestCaseId(), error.getCause().getMessage()));
+				if(LOGGER.isLoggable(Level.FINE)) {
+					LOGGER.log(Level.FINE, error.getCause().getMessage(), error.getCause());
+				}
+			}
+			build.setResult(Result.UNSTABLE);
 		}
 	
 		// This report is used to generate the graphs and to store the list of
@@ -258,9 +424,21 @@ public class TestopiaBuilder extends Builder {
 		
 		listener.getLogger().println(Messages.Testopia_Builder_Found(report.getTestsTotal()));
 		
+		try {
+			report.save(new File(build.getRootDir(), Report.FILE_NAME));
+		} catch (IOException e) {
+			e.printStackTrace(listener.getLogger());
+		}
+		
 		final TestopiaResult result = new TestopiaResult(report, build);
 		final TestopiaBuildAction buildAction = new TestopiaBuildAction(build, result);
 		build.addAction(buildAction);
+		
+		try {
+			new TrendIndex(build.getProject()).append(build, report);
+		} catch (IOException e) {
+			e.printStackTrace(listener.getLogger());
+		}
 
 		if (report.getFailed() > 0) {
 			if (this.failedTestsMarkBuildAsFailure != null && this.failedTestsMarkBuildAsFailure) {
@@ -270,11 +448,120 @@ public class TestopiaBuilder extends Builder {
 			}
 		}
 
+		if(api instanceof TestopiaConnection) {
+			final TestopiaSession session = ((TestopiaConnection) api).getSession();
+			listener.getLogger().println(Messages.Testopia_Builder_Session(installation.getName(), 
+					session.getHits(), session.getLogins(), session.getRelogins()));
+		}
+		this.printTraffic(openConnections, listener);
+		this.printRetries(openConnections, listener);
+
 		LOGGER.log(Level.INFO, Messages.Testopia_Builder_Finished());
 		
 		// end
 		return Boolean.TRUE;
 	}
+	/**
+	 * Prints the size of the messages exchanged with Testopia by the 
+	 * connections of the build, before and after compression.
+	 * @param connections Testopia connections
+	 * @param listener Jenkins Build listener
+	 */
+	protected void printTraffic(List<TestopiaAPI> connections, BuildListener listener) {
+		final HttpClientTransport.Traffic total = new HttpClientTransport.Traffic();
+		for(TestopiaAPI connection : connections) {
+			if(connection instanceof TestopiaConnection && ((TestopiaConnection) connection).getTraffic() != null) {
+				total.add(((TestopiaConnection) connection).getTraffic());
+			}
+		}
+		if(total.getRequestBytes() > 0) {
+			listener.getLogger().println(Messages.Testopia_Builder_Traffic(
+					total.getRequestBytes(), total.getRequestWireBytes(), 
+					total.getResponseBytes(), total.getResponseWireBytes()));
+		}
+	}
+	/**
+	 * Prints a summary of the calls to Testopia retried by the connections 
+	 * of the build.
+	 * @param connections Testopia connections
+	 * @param listener Jenkins Build listener
+	 */
+	protected void printRetries(List<TestopiaAPI> connections, BuildListener listener) {
+		final HttpClientTransport.Retries total = new HttpClientTransport.Retries();
+		for(TestopiaAPI connection : connections) {
+			if(connection instanceof TestopiaConnection && ((TestopiaConnection) connection).getRetries() != null) {
+				total.add(((TestopiaConnection) connection).getRetries());
+			}
+		}
+		if(total.getRetries() > 0 || total.getRejected() > 0) {
+			listener.getLogger().println(Messages.Testopia_Builder_Retries(
+					total.getRetries(), total.getRecovered(), total.getFailed(), total.getRejected()));
+			for(Map.Entry<String, Integer> entry : total.getRetriesByMethod().entrySet()) {
+				listener.getLogger().println(Messages.Testopia_Builder_RetriedMethod(entry.getKey(), entry.getValue()));
+			}
+		}
+	}
+	/**
+	 * Loads the statuses compared with the test case updates, from the test 
+	 * case runs in Testopia or from the report of the previous build. If the 
+	 * statuses cannot be loaded, all the updates are sent.
+	 * @param build Jenkins build
+	 * @param snapshot test run data loaded at the start of the build
+	 * @param listener Jenkins Build listener
+	 * @return the baseline, or <code>null</code>
+	 */
+	protected StatusBaseline loadBaseline(AbstractBuild<?, ?> build, TestRunSnapshot snapshot, BuildListener listener) {
+		final StatusBaseline.Source source = StatusBaseline.Source.parse(statusBaseline);
+		StatusBaseline baseline = null;
+		try {
+			switch(source) {
+			case TESTOPIA:
+				if(snapshot.hasCaseRuns()) {
+					baseline = StatusBaseline.fromSnapshot(snapshot);
+				}
+				break;
+			case PREVIOUS_BUILD:
+				final AbstractBuild<?, ?> previousBuild = build.getPreviousBuild();
+				if(previousBuild != null) {
+					final File reportFile = new File(previousBuild.getRootDir(), Report.FILE_NAME);
+					if(reportFile.exists()) {
+						baseline = StatusBaseline.fromReport(Report.load(reportFile));
+					}
+				}
+				break;
+			default:
+				return null;
+			}
+		} catch (IOException e) {
+			e.printStackTrace(listener.getLogger());
+		} catch (RuntimeException e) {
+			e.printStackTrace(listener.getLogger());
+		}
+		if(baseline == null) {
+			listener.getLogger().println(Messages.Testopia_Builder_NoBaseline(source));
+		} else {
+			listener.getLogger().println(Messages.Testopia_Builder_Baseline(baseline.size(), source));
+		}
+		return baseline;
+	}
+	/**
+	 * Opens a new connection to Testopia and logs in. The connection uses the 
+	 * pool of HTTP connections of the installation.
+	 * @param installation Testopia installation
+	 * @param listener Jenkins Build listener
+	 * @return Testopia API
+	 * @throws IOException
+	 */
+	protected TestopiaAPI connect(TestopiaInstallation installation, BuildListener listener) throws IOException {
+		final TestopiaAPI api = TestopiaConnectionPool.get(installation).newConnection();
+		try {
+			api.login(installation.getUsername(), installation.getPassword());
+		} catch (Exception e) {
+			e.printStackTrace(listener.getLogger());
+			throw new AbortException(e.getMessage());
+		}
+		return api;
+	}
 	/**
 	 * Executes the list of single build steps.
 	 * 
@@ -323,40 +610,33 @@ public class TestopiaBuilder extends Builder {
 				}
 			}
 		}
-		if (iterativeBuildSteps != null) {
-			for (TestCaseWrapper automatedTestCase : testCases) {
-				if(automatedTestCase == null) {
-					continue;
-				}
-				if(LOGGER.isLoggable(Level.FINE)) {
-					LOGGER.log(Level.FINE, Messages.Testopia_Builder_IterativeBuildStep());
-					LOGGER.log(Level.FINE, Messages.Testopia_Builder_AutomatedTestCase(automatedTestCase.getId(), automatedTestCase.getScript()));
-				}
-				final EnvVars iterativeEnvVars = Utils.buildTestCaseEnvVars(automatedTestCase);
-				build.addAction(new EnvironmentContributingAction() {
-					public void buildEnvVars(AbstractBuild<?, ?> build,
-							EnvVars env) {
-						env.putAll(iterativeEnvVars);
+		if (iterativeBuildSteps != null && iterationConcurrency != null && iterationConcurrency > 1) {
+			this.executeIterativeBuildStepsInParallel(testCases, build, launcher, listener);
+		} else if (iterativeBuildSteps != null) {
+			// A single contributor is swapped per test case, and removed once 
+			// done so that it is not persisted with the build
+			final TestCaseEnvironmentAction environment = new TestCaseEnvironmentAction();
+			build.addAction(environment);
+			try {
+				for (TestCaseWrapper automatedTestCase : testCases) {
+					if(automatedTestCase == null) {
+						continue;
 					}
-
-					public String getUrlName() {
-						return null;
-					}
-
-					public String getIconFileName() {
-						return null;
-					}
-
-					public String getDisplayName() {
-						return null;
+					if(LOGGER.isLoggable(Level.FINE)) {
+						LOGGER.log(Level.FINE, Messages.Testopia_Builder_IterativeBuildStep());
+						LOGGER.log(Level.FINE, Messages.Testopia_Builder_AutomatedTestCase(automatedTestCase.getId(), automatedTestCase.getScript()));
 					}
-				});
-				for (BuildStep b : iterativeBuildSteps) {
-					final boolean success = b.perform(build, launcher, listener);
-					if(!success) {
-						build.setResult(Result.UNSTABLE);
+					environment.set(Utils.buildTestCaseEnvVars(automatedTestCase));
+					for (BuildStep b : iterativeBuildSteps) {
+						final boolean success = b.perform(build, launcher, listener);
+						if(!success) {
+							build.setResult(Result.UNSTABLE);
+						}
 					}
 				}
+			} finally {
+				environment.remove();
+				build.getActions().remove(environment);
 			}
 		}
 		if (afterIteratingAllTestCasesBuildSteps != null) {
@@ -369,63 +649,102 @@ public class TestopiaBuilder extends Builder {
 		}
 	}
 	/**
-	 * <p>Define properties. Following is the list of available properties.</p>
-	 * 
-	 * <ul>
-	 *  	<li>xmlrpc.basicEncoding</li>
- 	 *  	<li>xmlrpc.basicPassword</li>
- 	 *  	<li>xmlrpc.basicUsername</li>
- 	 *  	<li>xmlrpc.connectionTimeout</li>
- 	 *  	<li>xmlrpc.contentLengthOptional</li>
- 	 *  	<li>xmlrpc.enabledForExceptions</li>
- 	 *  	<li>xmlrpc.encoding</li>
- 	 *  	<li>xmlrpc.gzipCompression</li>
- 	 *  	<li>xmlrpc.gzipRequesting</li>
- 	 *  	<li>xmlrpc.replyTimeout</li>
- 	 *  	<li>xmlrpc.userAgent</li>
-	 * </ul>
+	 * <p>
+	 * Executes the iterative build steps of up to <code>iterationConcurrency</code> 
+	 * test cases in parallel. Each test case sees only its own environment 
+	 * variables, and its output is written to the build log as a single 
+	 * section once its build steps finish. If the build steps of any test 
+	 * case fail, the build is marked as UNSTABLE.
+	 * </p>
 	 * 
-	 * @param properties List of comma separated properties
-	 * @param listener Jenkins Build listener
+	 * @param testCases
+	 *            array of automated test cases
+	 * @param build
+	 * @param launcher
+	 * @param listener
+	 * @throws InterruptedException
 	 */
-	public static void setProperties(String properties, BuildListener listener) {
-		if (StringUtils.isNotBlank(properties)) {
-			final StringTokenizer tokenizer = new StringTokenizer(properties, ",");
-
-			if (tokenizer.countTokens() > 0) {
-				while (tokenizer.hasMoreTokens()) {
-					String systemProperty = tokenizer.nextToken();
-					maybeAddSystemProperty(systemProperty, listener);
+	protected void executeIterativeBuildStepsInParallel(final TestCaseWrapper[] testCases, 
+			final AbstractBuild<?, ?> build, 
+			final Launcher launcher, final BuildListener listener) throws InterruptedException {
+		listener.getLogger().println(Messages.Testopia_Builder_ParallelIterativeBuildSteps(testCases.length, iterationConcurrency));
+		final TestCaseEnvironmentAction environment = new TestCaseEnvironmentAction();
+		build.addAction(environment);
+		final ExecutorService executor = Executors.newFixedThreadPool(iterationConcurrency);
+		try {
+			final List<Future<Boolean>> results = new ArrayList<Future<Boolean>>(testCases.length);
+			for (final TestCaseWrapper automatedTestCase : testCases) {
+				if(automatedTestCase == null) {
+					continue;
 				}
+				results.add(executor.submit(new Callable<Boolean>() {
+					public Boolean call() throws Exception {
+						return executeIterativeBuildSteps(automatedTestCase, environment, build, launcher, listener);
+					}
+				}));
 			}
+			int failures = 0;
+			for (Future<Boolean> result : results) {
+				try {
+					if(!result.get()) {
+						failures += 1;
+					}
+				} catch (ExecutionException e) {
+					e.getCause().printStackTrace(listener.getLogger());
+					failures += 1;
+				}
+			}
+			if(failures > 0) {
+				listener.getLogger().println(Messages.Testopia_Builder_IterativeBuildStepsFailed(failures, results.size()));
+				build.setResult(Result.UNSTABLE);
+			}
+		} finally {
+			executor.shutdownNow();
+			build.getActions().remove(environment);
 		}
 	}
-	
 	/**
-	 * Maybe adds a system property if it is in format <key>=<value>.
+	 * Executes the iterative build steps for a single test case, buffering 
+	 * its output.
 	 * 
-	 * @param systemProperty System property entry in format <key>=<value>.
-	 * @param listener Jenkins Build listener
+	 * @param automatedTestCase
+	 * @param environment
+	 * @param build
+	 * @param launcher
+	 * @param listener
+	 * @return <code>true</code> if all the build steps succeeded
+	 * @throws InterruptedException
 	 */
-	public static void maybeAddSystemProperty(String systemProperty, BuildListener listener) {
-		final StringTokenizer tokenizer = new StringTokenizer(systemProperty, "=:");
-		if (tokenizer.countTokens() == 2) {
-			final String key = tokenizer.nextToken();
-			final String value = tokenizer.nextToken();
-
-			if (StringUtils.isNotBlank(key) && StringUtils.isNotBlank(value)) {
-				if (key.contains(BASIC_HTTP_PASSWORD)) {
-					listener.getLogger().println(Messages.Testopia_Builder_Password(key));
-				} else {
-					listener.getLogger().println(Messages.Testopia_Builder_Setting(key, value));
-				}
-				try {
-					System.setProperty(key, value);
-				} catch (SecurityException se) {
-					se.printStackTrace(listener.getLogger());
+	private boolean executeIterativeBuildSteps(TestCaseWrapper automatedTestCase, 
+			TestCaseEnvironmentAction environment, AbstractBuild<?, ?> build, 
+			Launcher launcher, BuildListener listener) throws InterruptedException {
+		final ByteArrayOutputStream log = new ByteArrayOutputStream();
+		final BuildListener testCaseListener = new StreamBuildListener(log);
+		boolean success = true;
+		environment.set(Utils.buildTestCaseEnvVars(automatedTestCase));
+		try {
+			for (BuildStep b : iterativeBuildSteps) {
+				if(!b.perform(build, launcher, testCaseListener)) {
+					success = false;
 				}
-
+			}
+		} catch (IOException e) {
+			e.printStackTrace(testCaseListener.getLogger());
+			success = false;
+		} catch (RuntimeException e) {
+			e.printStackTrace(testCaseListener.getLogger());
+			success = false;
+		} finally {
+			environment.remove();
+			testCaseListener.getLogger().flush();
+			final byte[] output = log.toByteArray();
+			final PrintStream logger = listener.getLogger();
+			synchronized (logger) {
+				logger.println(Messages.Testopia_Builder_TestCaseLog(automatedTestCase.getId(), automatedTestCase.getSummary()));
+				logger.write(output, 0, output.length);
+				logger.flush();
 			}
 		}
+		return success;
 	}
 }
@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2012> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.testopia;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>Circuit breaker of a Testopia installation, shared by all the 
+ * connections of a {@link TestopiaConnectionPool}. After 
+ * {@link #FAILURE_THRESHOLD} consecutive transient failures, the circuit 
+ * opens and calls fail fast, without reaching the server, for 
+ * {@link #OPEN_TIME} milliseconds. Then a single call is let through: if it 
+ * succeeds the circuit closes, otherwise it opens again.</p>
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 1.4
+ */
+public final class TestopiaCircuitBreaker {
+
+	private static final Logger LOGGER = Logger.getLogger("jenkins.plugins.testopia");
+	
+	/**
+	 * Number of consecutive failures that opens the circuit.
+	 */
+	public static final int FAILURE_THRESHOLD = 5;
+	/**
+	 * Time in milliseconds the circuit stays open before a call is let through.
+	 */
+	public static final long OPEN_TIME = 30 * 1000L;
+	
+	private enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+	
+	private final String url;
+	private State state = State.CLOSED;
+	private int failures = 0;
+	private long openedAt = 0L;
+	private int opened = 0;
+	
+	/**
+	 * @param url Testopia XML-RPC URL, used in the log messages
+	 */
+	public TestopiaCircuitBreaker(String url) {
+		this.url = url;
+	}
+	
+	/**
+	 * @return <code>false</code> if the call must fail fast
+	 */
+	public synchronized boolean allowRequest() {
+		switch(state) {
+		case CLOSED:
+			return true;
+		case OPEN:
+			if(System.currentTimeMillis() - openedAt >= OPEN_TIME) {
+				state = State.HALF_OPEN;
+				return true;
+			}
+			return false;
+		default:
+			// a trial call is in flight
+			return false;
+		}
+	}
+	
+	/**
+	 * Records a call that reached the server.
+	 */
+	public synchronized void recordSuccess() {
+		if(state != State.CLOSED) {
+			LOGGER.log(Level.INFO, "Testopia server at " + url + " is available again, closing the circuit");
+		}
+		state = State.CLOSED;
+		failures = 0;
+	}
+	
+	/**
+	 * Records a call that failed with a transient error.
+	 */
+	public synchronized void recordFailure() {
+		failures++;
+		if(state == State.HALF_OPEN || (state == State.CLOSED && failures >= FAILURE_THRESHOLD)) {
+			state = State.OPEN;
+			openedAt = System.currentTimeMillis();
+			opened++;
+			LOGGER.log(Level.WARNING, "Testopia server at " + url + " failed " + failures + 
+					" consecutive calls, failing fast for " + (OPEN_TIME / 1000L) + " seconds");
+		}
+	}
+	
+	/**
+	 * @return <code>true</code> if calls are failing fast
+	 */
+	public synchronized boolean isOpen() {
+		return state != State.CLOSED;
+	}
+	
+	/**
+	 * @return number of times the circuit was opened
+	 */
+	public synchronized int getOpened() {
+		return opened;
+	}
+	
+}
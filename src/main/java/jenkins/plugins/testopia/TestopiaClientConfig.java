@@ -0,0 +1,351 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2012> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.testopia;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.xmlrpc.client.XmlRpcClientConfigImpl;
+
+/**
+ * <p>XML-RPC client settings of a Testopia installation. The settings are 
+ * parsed once from the comma separated list of properties of the 
+ * installation, and applied only to the clients of that installation, so 
+ * concurrent builds using different installations do not affect each 
+ * other.</p>
+ * 
+ * <p>The available properties are the ones of the Testopia Java Driver: 
+ * {@link #KEYS}. A property missing from the installation falls back to the 
+ * system property with the same name, if any. Instances are immutable.</p>
+ * 
+ * <p>The {@link Compression} of the installation, when set, takes 
+ * precedence over the gzip properties.</p>
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 1.4
+ */
+public final class TestopiaClientConfig {
+
+	private static final Logger LOGGER = Logger.getLogger("jenkins.plugins.testopia");
+	
+	public static final String BASIC_ENCODING = "xmlrpc.basicEncoding";
+	public static final String BASIC_PASSWORD = "xmlrpc.basicPassword";
+	public static final String BASIC_USERNAME = "xmlrpc.basicUsername";
+	public static final String CONNECTION_TIMEOUT = "xmlrpc.connectionTimeout";
+	public static final String CONTENT_LENGTH_OPTIONAL = "xmlrpc.contentLengthOptional";
+	public static final String ENABLED_FOR_EXCEPTIONS = "xmlrpc.enabledForExceptions";
+	public static final String ENCODING = "xmlrpc.encoding";
+	public static final String GZIP_COMPRESSION = "xmlrpc.gzipCompression";
+	public static final String GZIP_REQUESTING = "xmlrpc.gzipRequesting";
+	public static final String REPLY_TIMEOUT = "xmlrpc.replyTimeout";
+	public static final String USER_AGENT = "xmlrpc.userAgent";
+	
+	/**
+	 * Available properties.
+	 */
+	public static final List<String> KEYS = Collections.unmodifiableList(Arrays.asList(
+			BASIC_ENCODING, BASIC_PASSWORD, BASIC_USERNAME, CONNECTION_TIMEOUT, 
+			CONTENT_LENGTH_OPTIONAL, ENABLED_FOR_EXCEPTIONS, ENCODING, GZIP_COMPRESSION, 
+			GZIP_REQUESTING, REPLY_TIMEOUT, USER_AGENT));
+	
+	/**
+	 * Compression of the messages exchanged with Testopia.
+	 */
+	public enum Compression {
+		/**
+		 * Messages are not compressed.
+		 */
+		NONE, 
+		/**
+		 * Requests are compressed and compressed responses are accepted.
+		 */
+		GZIP, 
+		/**
+		 * Compressed responses are accepted. Requests are compressed once 
+		 * the server has sent a compressed response, until it rejects a 
+		 * compressed request.
+		 */
+		AUTO;
+		/**
+		 * @param value compression name, case insensitive
+		 * @return the compression, or <code>null</code> if blank or unknown
+		 */
+		public static Compression parse(String value) {
+			if(StringUtils.isNotBlank(value)) {
+				try {
+					return Compression.valueOf(value.trim().toUpperCase());
+				} catch (IllegalArgumentException e) {
+					LOGGER.log(Level.WARNING, "Ignoring unknown Testopia compression " + value);
+				}
+			}
+			return null;
+		}
+	}
+	
+	private final Map<String, String> properties;
+	private final Compression compression;
+	private final String basicEncoding;
+	private final String basicPassword;
+	private final String basicUsername;
+	private final int connectionTimeout;
+	private final boolean contentLengthOptional;
+	private final boolean enabledForExceptions;
+	private final String encoding;
+	private final boolean gzipCompression;
+	private final boolean gzipRequesting;
+	private final int replyTimeout;
+	private final String userAgent;
+	
+	/**
+	 * @param properties properties set in the installation
+	 * @param compression compression set in the installation, may be <code>null</code>
+	 */
+	private TestopiaClientConfig(Map<String, String> properties, Compression compression) {
+		this.properties = Collections.unmodifiableMap(properties);
+		this.basicEncoding = this.getString(BASIC_ENCODING);
+		this.basicPassword = this.getString(BASIC_PASSWORD);
+		this.basicUsername = this.getString(BASIC_USERNAME);
+		this.connectionTimeout = this.getInt(CONNECTION_TIMEOUT);
+		this.contentLengthOptional = this.getBoolean(CONTENT_LENGTH_OPTIONAL);
+		this.enabledForExceptions = this.getBoolean(ENABLED_FOR_EXCEPTIONS);
+		this.encoding = this.getString(ENCODING);
+		if(compression == null) {
+			this.compression = this.getBoolean(GZIP_COMPRESSION) ? Compression.GZIP : Compression.NONE;
+			this.gzipCompression = this.getBoolean(GZIP_COMPRESSION);
+			this.gzipRequesting = this.getBoolean(GZIP_REQUESTING);
+		} else {
+			this.compression = compression;
+			this.gzipCompression = compression == Compression.GZIP;
+			this.gzipRequesting = compression != Compression.NONE;
+		}
+		this.replyTimeout = this.getInt(REPLY_TIMEOUT);
+		this.userAgent = this.getString(USER_AGENT);
+	}
+	
+	/**
+	 * Parses a list of properties in the format 
+	 * <code>key=value,key=value</code>. Unknown properties are ignored.
+	 * @param properties comma separated list of properties
+	 * @return the client configuration
+	 */
+	public static TestopiaClientConfig parse(String properties) {
+		return parse(properties, null);
+	}
+	
+	/**
+	 * Parses a list of properties in the format 
+	 * <code>key=value,key=value</code>. Unknown properties are ignored.
+	 * @param properties comma separated list of properties
+	 * @param compression compression name, overrides the gzip properties when set
+	 * @return the client configuration
+	 */
+	public static TestopiaClientConfig parse(String properties, String compression) {
+		final Map<String, String> values = new TreeMap<String, String>();
+		final StringTokenizer tokenizer = new StringTokenizer(StringUtils.defaultString(properties), ",");
+		while(tokenizer.hasMoreTokens()) {
+			final StringTokenizer entry = new StringTokenizer(tokenizer.nextToken(), "=:");
+			if(entry.countTokens() == 2) {
+				final String key = entry.nextToken().trim();
+				final String value = entry.nextToken().trim();
+				if(!KEYS.contains(key)) {
+					LOGGER.log(Level.WARNING, "Ignoring unknown Testopia connection property " + key);
+				} else if(StringUtils.isNotBlank(value)) {
+					values.put(key, value);
+				}
+			}
+		}
+		return new TestopiaClientConfig(values, Compression.parse(compression));
+	}
+	
+	/**
+	 * @return the properties set in the installation, by name
+	 */
+	public Map<String, String> getProperties() {
+		return properties;
+	}
+	
+	/**
+	 * @return the compression of the messages
+	 */
+	public Compression getCompression() {
+		return compression;
+	}
+	
+	/**
+	 * @return the basicEncoding
+	 */
+	public String getBasicEncoding() {
+		return basicEncoding;
+	}
+	
+	/**
+	 * @return the basicPassword
+	 */
+	public String getBasicPassword() {
+		return basicPassword;
+	}
+	
+	/**
+	 * @return the basicUsername
+	 */
+	public String getBasicUsername() {
+		return basicUsername;
+	}
+	
+	/**
+	 * @return the connectionTimeout in milliseconds
+	 */
+	public int getConnectionTimeout() {
+		return connectionTimeout;
+	}
+	
+	/**
+	 * @return the contentLengthOptional
+	 */
+	public boolean isContentLengthOptional() {
+		return contentLengthOptional;
+	}
+	
+	/**
+	 * @return the enabledForExceptions
+	 */
+	public boolean isEnabledForExceptions() {
+		return enabledForExceptions;
+	}
+	
+	/**
+	 * @return the encoding
+	 */
+	public String getEncoding() {
+		return encoding;
+	}
+	
+	/**
+	 * @return the gzipCompression
+	 */
+	public boolean isGzipCompression() {
+		return gzipCompression;
+	}
+	
+	/**
+	 * @return the gzipRequesting
+	 */
+	public boolean isGzipRequesting() {
+		return gzipRequesting;
+	}
+	
+	/**
+	 * @return the replyTimeout in milliseconds
+	 */
+	public int getReplyTimeout() {
+		return replyTimeout;
+	}
+	
+	/**
+	 * @return the userAgent
+	 */
+	public String getUserAgent() {
+		return userAgent;
+	}
+	
+	/**
+	 * Creates the configuration of an XML-RPC client. Each client gets its 
+	 * own copy, as the XML-RPC configuration is mutable.
+	 * @param url Testopia XML-RPC URL
+	 * @return XML-RPC client configuration
+	 */
+	public XmlRpcClientConfigImpl createXmlRpcConfig(URL url) {
+		final XmlRpcClientConfigImpl config = new XmlRpcClientConfigImpl();
+		config.setEnabledForExtensions(true);
+		config.setServerURL(url);
+		config.setBasicEncoding(basicEncoding);
+		config.setBasicPassword(basicPassword);
+		config.setBasicUserName(basicUsername);
+		config.setConnectionTimeout(connectionTimeout);
+		config.setContentLengthOptional(contentLengthOptional);
+		config.setEnabledForExceptions(enabledForExceptions);
+		if(encoding != null) {
+			config.setEncoding(encoding);
+		}
+		config.setGzipCompressing(gzipCompression);
+		config.setGzipRequesting(gzipRequesting);
+		config.setReplyTimeout(replyTimeout);
+		config.setUserAgent(userAgent);
+		return config;
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if(this == obj) {
+			return true;
+		}
+		if(!(obj instanceof TestopiaClientConfig)) {
+			return false;
+		}
+		final TestopiaClientConfig other = (TestopiaClientConfig) obj;
+		return properties.equals(other.properties) && compression == other.compression;
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return 31 * properties.hashCode() + compression.hashCode();
+	}
+	
+	private String getString(String key) {
+		final String value = properties.get(key);
+		return value != null ? value : System.getProperty(key);
+	}
+	
+	private int getInt(String key) {
+		final String value = this.getString(key);
+		if(value != null) {
+			try {
+				return Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				LOGGER.log(Level.WARNING, "Invalid value for Testopia connection property " + key + ": " + value);
+			}
+		}
+		return 0;
+	}
+	
+	private boolean getBoolean(String key) {
+		final String value = this.getString(key);
+		return value != null && Boolean.parseBoolean(value.trim());
+	}
+	
+}
@@ -0,0 +1,406 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2012> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.testopia;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jenkins.plugins.testopia.result.TestCaseWrapper;
+
+import org.apache.xmlrpc.XmlRpcException;
+import org.apache.xmlrpc.client.XmlRpcClient;
+import org.apache.xmlrpc.client.XmlRpcClientException;
+import org.apache.xmlrpc.client.XmlRpcHttpTransportException;
+import org.mozilla.testopia.TestopiaAPI;
+import org.mozilla.testopia.model.Build;
+import org.mozilla.testopia.model.TestCase;
+import org.mozilla.testopia.model.TestCaseRun;
+import org.mozilla.testopia.model.TestPlan;
+import org.mozilla.testopia.model.TestRun;
+import org.mozilla.testopia.service.BuildService;
+import org.mozilla.testopia.service.TestCaseService;
+import org.mozilla.testopia.service.TestPlanService;
+import org.mozilla.testopia.service.TestRunService;
+import org.mozilla.testopia.service.xmlrpc.XmlRpcBuildService;
+import org.mozilla.testopia.service.xmlrpc.XmlRpcTestCaseService;
+import org.mozilla.testopia.service.xmlrpc.XmlRpcTestPlanService;
+import org.mozilla.testopia.service.xmlrpc.XmlRpcTestRunService;
+
+/**
+ * <p>Testopia API backed by an XML-RPC client given by the caller, instead 
+ * of the client created by the Testopia Java Driver. The calls are 
+ * delegated to the driver services, built on top of that client.</p>
+ * 
+ * <p>Connections are obtained from a {@link TestopiaConnectionPool}, so 
+ * they send their requests through the pooled HTTP client of the 
+ * Testopia installation, and log in through its {@link TestopiaSession}.</p>
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 1.4
+ */
+public class TestopiaConnection extends TestopiaAPI {
+
+	/**
+	 * XML-RPC method returning all the test case runs of a test run.
+	 */
+	public static final String GET_TEST_CASE_RUNS_METHOD = "TestRun.get_test_case_runs";
+	/**
+	 * XML-RPC method updating the status of a test case run.
+	 */
+	public static final String UPDATE_METHOD = "TestCaseRun.update";
+	/**
+	 * XML-RPC method sending several calls in a single request.
+	 */
+	public static final String MULTICALL_METHOD = "system.multicall";
+
+	private final XmlRpcClient client;
+	private final TestopiaSession session;
+	private final TestopiaConnectionPool pool;
+	private final BuildService buildService;
+	private final TestCaseService testCaseService;
+	private final TestPlanService testPlanService;
+	private final TestRunService testRunService;
+	private boolean loggedIn = false;
+	
+	/**
+	 * @param url Testopia XML-RPC URL
+	 * @param client XML-RPC client
+	 * @param session session shared with the other connections to Testopia
+	 */
+	public TestopiaConnection(URL url, XmlRpcClient client, TestopiaSession session) {
+		this(url, client, session, null);
+	}
+	
+	/**
+	 * @param url Testopia XML-RPC URL
+	 * @param client XML-RPC client
+	 * @param session session shared with the other connections to Testopia
+	 * @param pool pool the connection belongs to, or <code>null</code>
+	 */
+	public TestopiaConnection(URL url, XmlRpcClient client, TestopiaSession session, TestopiaConnectionPool pool) {
+		super(url);
+		this.client = client;
+		this.session = session;
+		this.pool = pool;
+		this.buildService = new XmlRpcBuildService(client);
+		this.testCaseService = new XmlRpcTestCaseService(client);
+		this.testPlanService = new XmlRpcTestPlanService(client);
+		this.testRunService = new XmlRpcTestRunService(client);
+	}
+	
+	/**
+	 * @return the XML-RPC client
+	 */
+	public XmlRpcClient getClient() {
+		return client;
+	}
+	
+	/**
+	 * @return the size of the messages exchanged with Testopia, or 
+	 * <code>null</code> if the client does not use an {@link HttpClientTransport}
+	 */
+	public HttpClientTransport.Traffic getTraffic() {
+		if(client.getTransportFactory() instanceof HttpClientTransport.Factory) {
+			return ((HttpClientTransport.Factory) client.getTransportFactory()).getTraffic();
+		}
+		return null;
+	}
+	
+	/**
+	 * @return the calls retried by this connection, or <code>null</code> if 
+	 * the client does not use an {@link HttpClientTransport}
+	 */
+	public HttpClientTransport.Retries getRetries() {
+		if(client.getTransportFactory() instanceof HttpClientTransport.Factory) {
+			return ((HttpClientTransport.Factory) client.getTransportFactory()).getRetries();
+		}
+		return null;
+	}
+	
+	/**
+	 * @return the session shared with the other connections to Testopia
+	 */
+	public TestopiaSession getSession() {
+		return session;
+	}
+	
+	/**
+	 * Gets all the test case runs of a test run in a single call. The 
+	 * driver does not implement this call ({@link #getCaseRuns(Integer)} 
+	 * always returns <code>null</code>), so it is sent through the client.
+	 * @param runId test run ID
+	 * @return test case runs
+	 * @throws RuntimeException if the call fails
+	 */
+	public TestCaseRun[] getTestCaseRuns(Integer runId) {
+		final Object result;
+		try {
+			result = client.execute(GET_TEST_CASE_RUNS_METHOD, new Object[] { runId });
+		} catch (XmlRpcException e) {
+			throw new RuntimeException("Failed to get the test case runs of test run " + runId + ": " + e.getMessage(), e);
+		}
+		if(!(result instanceof Object[])) {
+			return new TestCaseRun[0];
+		}
+		final Object[] values = (Object[]) result;
+		final TestCaseRun[] caseRuns = new TestCaseRun[values.length];
+		for(int i = 0; i < values.length; i++) {
+			if(values[i] instanceof Map) {
+				final Map<?, ?> map = (Map<?, ?>) values[i];
+				final TestCaseRun caseRun = new TestCaseRun();
+				caseRun.setId(toInteger(map.get("case_run_id")));
+				caseRun.setRunId(toInteger(map.get("run_id")));
+				caseRun.setTestCaseId(toInteger(map.get("case_id")));
+				caseRun.setBuildId(toInteger(map.get("build_id")));
+				caseRun.setEnvironmentId(toInteger(map.get("environment_id")));
+				caseRun.setStatusId(toInteger(map.get("case_run_status_id")));
+				caseRuns[i] = caseRun;
+			}
+		}
+		return caseRuns;
+	}
+	
+	/**
+	 * Updates the status of a batch of test cases with a single 
+	 * system.multicall request. If the server rejects system.multicall, the 
+	 * pool remembers it and the updates are sent one per call from then on.
+	 * @param batch test cases, with their run, build and environment IDs
+	 * @return the failure of each update, in the order of the batch, 
+	 * <code>null</code> for the updates that succeeded
+	 * @throws RuntimeException if the whole request fails
+	 */
+	public List<RuntimeException> update(List<TestCaseWrapper> batch) {
+		if(batch.size() > 1 && (pool == null || pool.isMulticallSupported())) {
+			final Object[] calls = new Object[batch.size()];
+			for(int i = 0; i < calls.length; i++) {
+				final TestCaseWrapper tc = batch.get(i);
+				final Map<String, Object> call = new HashMap<String, Object>();
+				call.put("methodName", UPDATE_METHOD);
+				call.put("params", new Object[] { updateParams(tc, tc.getRunId(), tc.getBuildId(), tc.getEnvId()) });
+				calls[i] = call;
+			}
+			try {
+				return toFailures(batch, client.execute(MULTICALL_METHOD, new Object[] { calls }));
+			} catch (XmlRpcException e) {
+				if(pool == null || e instanceof XmlRpcClientException || e instanceof XmlRpcHttpTransportException || 
+						TestopiaSession.isAuthenticationFailure(e)) {
+					throw new RuntimeException("Failed to update " + batch.size() + " test cases: " + e.getMessage(), e);
+				}
+				// a fault for the request itself, the server has no system.multicall
+				pool.multicallRejected(e);
+			}
+		}
+		final List<RuntimeException> failures = new ArrayList<RuntimeException>(batch.size());
+		for(TestCaseWrapper tc : batch) {
+			try {
+				this.update(tc, tc.getRunId(), tc.getBuildId(), tc.getEnvId());
+				failures.add(null);
+			} catch (RuntimeException e) {
+				failures.add(e);
+			}
+		}
+		return failures;
+	}
+	
+	/**
+	 * @return the parameters of a TestCaseRun.update call, as sent by the driver
+	 */
+	private static Map<String, Object> updateParams(TestCase testCase, Integer runId, Integer buildId, Integer envId) {
+		final Map<String, Object> params = new HashMap<String, Object>();
+		params.put("run_id", runId);
+		params.put("case_id", testCase.getId());
+		params.put("build", buildId);
+		params.put("build_id", buildId);
+		params.put("environment", envId);
+		params.put("env_id", envId);
+		params.put("status", testCase.getStatusId());
+		return params;
+	}
+	
+	/**
+	 * Maps the results of a system.multicall request to the updates of the 
+	 * batch. Each result is either an array holding the value returned by 
+	 * the call, or a fault struct.
+	 */
+	private static List<RuntimeException> toFailures(List<TestCaseWrapper> batch, Object result) {
+		if(!(result instanceof Object[]) || ((Object[]) result).length != batch.size()) {
+			throw new RuntimeException("Unexpected response to " + MULTICALL_METHOD + " with " + batch.size() + " calls");
+		}
+		final Object[] results = (Object[]) result;
+		final List<RuntimeException> failures = new ArrayList<RuntimeException>(results.length);
+		for(int i = 0; i < results.length; i++) {
+			if(results[i] instanceof Map) {
+				final Map<?, ?> fault = (Map<?, ?>) results[i];
+				final Integer faultCode = toInteger(fault.get("faultCode"));
+				final XmlRpcException cause = new XmlRpcException(faultCode == null ? 0 : faultCode.intValue(), 
+						String.valueOf(fault.get("faultString")));
+				failures.add(new RuntimeException("Failed to update test case " + batch.get(i).getId() + " in test run " + 
+						batch.get(i).getRunId() + ": " + fault.get("faultString") + " (" + fault.get("faultCode") + ")", cause));
+			} else {
+				failures.add(null);
+			}
+		}
+		return failures;
+	}
+	
+	private static Integer toInteger(Object value) {
+		if(value instanceof Number) {
+			return ((Number) value).intValue();
+		}
+		if(value != null) {
+			try {
+				return Integer.valueOf(value.toString().trim());
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+		return null;
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.mozilla.testopia.TestopiaAPI#isLoggedIn()
+	 */
+	@Override
+	public boolean isLoggedIn() {
+		return loggedIn;
+	}
+	
+	/**
+	 * Logs in to Testopia, reusing the session when it is still valid.
+	 */
+	@Override
+	public void login(String username, String password) {
+		session.login(client, username, password);
+		loggedIn = true;
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.mozilla.testopia.TestopiaAPI#checkBuild(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public Build checkBuild(String name, String product) {
+		return buildService.checkBuild(name, product);
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.mozilla.testopia.TestopiaAPI#create(java.lang.String, java.lang.String, java.lang.String, java.lang.String, java.lang.Boolean)
+	 */
+	@Override
+	public Build create(String name, String product, String milestone, String description, Boolean active) {
+		return buildService.create(name, product, milestone, description, active);
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.mozilla.testopia.TestopiaAPI#getBuild(java.lang.Integer)
+	 */
+	@Override
+	public Build getBuild(Integer id) {
+		return buildService.getBuild(id);
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.mozilla.testopia.TestopiaAPI#getCaseRuns(java.lang.Integer)
+	 */
+	@Override
+	public List<Object> getCaseRuns(Integer buildId) {
+		return buildService.getCaseRuns(buildId);
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.mozilla.testopia.TestopiaAPI#getRuns(java.lang.Integer)
+	 */
+	@Override
+	public List<Object> getRuns(Integer buildId) {
+		return buildService.getRuns(buildId);
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.mozilla.testopia.TestopiaAPI#update(java.lang.Integer, java.lang.String, java.lang.String, java.lang.String, java.lang.Boolean)
+	 */
+	@Override
+	public Build update(Integer id, String name, String milestone, String description, Boolean active) {
+		return buildService.update(id, name, milestone, description, active);
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.mozilla.testopia.TestopiaAPI#lookupStatusNameById(java.lang.Integer)
+	 */
+	@Override
+	public String lookupStatusNameById(Integer id) {
+		return testCaseService.lookupStatusNameById(id);
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.mozilla.testopia.TestopiaAPI#getTestPlan(java.lang.Integer)
+	 */
+	@Override
+	public TestPlan getTestPlan(Integer id) {
+		return testPlanService.getTestPlan(id);
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.mozilla.testopia.TestopiaAPI#getTestRun(java.lang.Integer)
+	 */
+	@Override
+	public TestRun getTestRun(Integer id) {
+		return testRunService.getTestRun(id);
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.mozilla.testopia.TestopiaAPI#getTestCases(java.lang.Integer)
+	 */
+	@Override
+	public TestCase[] getTestCases(Integer runId) {
+		return testRunService.getTestCases(runId);
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.mozilla.testopia.TestopiaAPI#update(org.mozilla.testopia.model.TestCase, java.lang.Integer, java.lang.Integer, java.lang.Integer)
+	 */
+	@Override
+	public TestCaseRun update(TestCase testCase, Integer runId, Integer buildId, Integer envId) {
+		// sent through the client, as the driver logs and swallows the cause
+		final Object result;
+		try {
+			result = client.execute(UPDATE_METHOD, new Object[] { updateParams(testCase, runId, buildId, envId) });
+		} catch (XmlRpcException e) {
+			throw new RuntimeException("Failed to update test case " + testCase.getId() + " in test run " + runId + ": " + e.getMessage(), e);
+		}
+		final TestCaseRun testCaseRun = new TestCaseRun();
+		if(result instanceof Map) {
+			final Map<?, ?> map = (Map<?, ?>) result;
+			testCaseRun.setId(toInteger(map.get("case_run_id")));
+			testCaseRun.setRunId(toInteger(map.get("run_id")));
+			testCaseRun.setTestCaseId(toInteger(map.get("case_id")));
+			testCaseRun.setBuildId(toInteger(map.get("build_id")));
+			testCaseRun.setEnvironmentId(toInteger(map.get("environment_id")));
+			testCaseRun.setStatusId(toInteger(map.get("case_run_status_id")));
+		}
+		return testCaseRun;
+	}
+	
+}
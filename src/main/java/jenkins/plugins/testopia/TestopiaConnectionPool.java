@@ -0,0 +1,363 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2012> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.testopia;
+
+import hudson.Extension;
+import hudson.model.PeriodicWork;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.xmlrpc.client.XmlRpcClient;
+
+/**
+ * <p>Pool of HTTP connections to a Testopia installation, shared by all the 
+ * builds that use the installation. Connections are kept alive between 
+ * requests and builds, so the TCP and TLS handshakes are done once per 
+ * connection instead of once per request.</p>
+ * 
+ * <p>The pool holds at most {@link TestopiaInstallation#getMaxConnections()} 
+ * connections. Connections idle for longer than {@link #IDLE_TIMEOUT} are 
+ * closed by the {@link IdleConnectionEvictor}. When the settings of an 
+ * installation change, a new pool is created and the old one is shut down 
+ * once its connections are released.</p>
+ * 
+ * <p>The connections of a pool share a {@link TestopiaSession}, so the 
+ * login cookies are reused across builds. They also share what was 
+ * detected about the gzip support of the server, when the compression is 
+ * {@link TestopiaClientConfig.Compression#AUTO}, the retry policy and the 
+ * circuit breaker of the installation.</p>
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 1.4
+ */
+public final class TestopiaConnectionPool {
+
+	private static final Logger LOGGER = Logger.getLogger("jenkins.plugins.testopia");
+	
+	/**
+	 * Default maximum number of connections to an installation.
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS = 8;
+	/**
+	 * Time in milliseconds a connection is kept alive when the server does 
+	 * not send a keep-alive timeout.
+	 */
+	public static final long DEFAULT_KEEP_ALIVE = 30 * 1000L;
+	/**
+	 * Time in milliseconds after which an idle connection is closed.
+	 */
+	public static final long IDLE_TIMEOUT = 60 * 1000L;
+	
+	/**
+	 * Pools by installation name.
+	 */
+	private static final Map<String, TestopiaConnectionPool> POOLS = new HashMap<String, TestopiaConnectionPool>();
+	/**
+	 * Pools replaced after a configuration change, waiting to be shut down.
+	 */
+	private static final List<TestopiaConnectionPool> RETIRED = new ArrayList<TestopiaConnectionPool>();
+	
+	private final String url;
+	private final int maxConnections;
+	private final TestopiaClientConfig clientConfig;
+	private final TestopiaSession session;
+	private final TestopiaCircuitBreaker circuitBreaker;
+	private volatile TestopiaRetryPolicy retryPolicy;
+	private final PoolingHttpClientConnectionManager connectionManager;
+	private final CloseableHttpClient httpClient;
+	/**
+	 * Whether the server sent a gzip response.
+	 */
+	private volatile boolean gzipDetected = false;
+	/**
+	 * Whether the server rejected a gzip request.
+	 */
+	private volatile boolean gzipRejected = false;
+	/**
+	 * Whether the server rejected a system.multicall request.
+	 */
+	private volatile boolean multicallRejected = false;
+	
+	/**
+	 * @param url Testopia XML-RPC URL
+	 * @param maxConnections maximum number of connections
+	 * @param sessionTimeout time to live of the session in minutes
+	 * @param clientConfig XML-RPC client settings
+	 */
+	TestopiaConnectionPool(String url, int maxConnections, int sessionTimeout, TestopiaClientConfig clientConfig) {
+		this.url = url;
+		this.maxConnections = maxConnections;
+		this.clientConfig = clientConfig;
+		this.session = new TestopiaSession(sessionTimeout * 60 * 1000L);
+		this.circuitBreaker = new TestopiaCircuitBreaker(url);
+		this.retryPolicy = new TestopiaRetryPolicy(TestopiaRetryPolicy.DEFAULT_MAX_RETRIES, TestopiaRetryPolicy.DEFAULT_DELAY);
+		this.connectionManager = new PoolingHttpClientConnectionManager();
+		this.connectionManager.setMaxTotal(maxConnections);
+		this.connectionManager.setDefaultMaxPerRoute(maxConnections);
+		this.httpClient = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setKeepAliveStrategy(new KeepAliveStrategy())
+				// gzip is negotiated by the XML-RPC transport
+				.disableContentCompression()
+				.build();
+	}
+	
+	/**
+	 * Gets the pool of an installation, creating it on first use.
+	 * @param installation Testopia installation
+	 * @return the pool of connections to the installation
+	 */
+	public static synchronized TestopiaConnectionPool get(TestopiaInstallation installation) {
+		final int maxConnections = installation.getMaxConnections() != null && installation.getMaxConnections() > 0 ? 
+				installation.getMaxConnections() : DEFAULT_MAX_CONNECTIONS;
+		final int sessionTimeout = installation.getSessionTimeout() != null ? 
+				installation.getSessionTimeout() : TestopiaSession.DEFAULT_TIMEOUT;
+		TestopiaConnectionPool pool = POOLS.get(installation.getName());
+		if(pool == null || !pool.url.equals(installation.getUrl()) || pool.maxConnections != maxConnections || 
+				pool.session.getTimeToLive() != sessionTimeout * 60 * 1000L || 
+				!pool.clientConfig.equals(installation.getClientConfig())) {
+			if(pool != null) {
+				RETIRED.add(pool);
+			}
+			pool = new TestopiaConnectionPool(installation.getUrl(), maxConnections, sessionTimeout, 
+					installation.getClientConfig());
+			POOLS.put(installation.getName(), pool);
+		}
+		pool.retryPolicy = new TestopiaRetryPolicy(
+				installation.getMaxRetries() != null ? installation.getMaxRetries() : TestopiaRetryPolicy.DEFAULT_MAX_RETRIES, 
+				installation.getRetryDelay() != null ? installation.getRetryDelay() : TestopiaRetryPolicy.DEFAULT_DELAY);
+		return pool;
+	}
+	
+	/**
+	 * Closes the connections idle for longer than {@link #IDLE_TIMEOUT}, and 
+	 * shuts down the retired pools that are no longer in use.
+	 */
+	public static synchronized void evictIdleConnections() {
+		for(TestopiaConnectionPool pool : POOLS.values()) {
+			pool.closeIdleConnections();
+		}
+		for(Iterator<TestopiaConnectionPool> it = RETIRED.iterator(); it.hasNext(); ) {
+			final TestopiaConnectionPool pool = it.next();
+			pool.closeIdleConnections();
+			if(pool.getStats().getLeased() == 0) {
+				pool.shutdown();
+				it.remove();
+			}
+		}
+	}
+	
+	/**
+	 * Creates a new connection using this pool. The connection is not 
+	 * logged in.
+	 * @return Testopia connection
+	 * @throws MalformedURLException
+	 */
+	public TestopiaConnection newConnection() throws MalformedURLException {
+		final URL serverUrl = new URL(url);
+		final XmlRpcClient client = new XmlRpcClient();
+		client.setConfig(clientConfig.createXmlRpcConfig(serverUrl));
+		client.setTransportFactory(new HttpClientTransport.Factory(client, this));
+		return new TestopiaConnection(serverUrl, client, session, this);
+	}
+	
+	/**
+	 * @return the url
+	 */
+	public String getUrl() {
+		return url;
+	}
+	
+	/**
+	 * @return the maximum number of connections
+	 */
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+	
+	/**
+	 * @return the XML-RPC client settings
+	 */
+	public TestopiaClientConfig getClientConfig() {
+		return clientConfig;
+	}
+	
+	/**
+	 * @return the session shared by the connections
+	 */
+	public TestopiaSession getSession() {
+		return session;
+	}
+	
+	/**
+	 * @return the circuit breaker of the installation
+	 */
+	public TestopiaCircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+	
+	/**
+	 * @return the retry policy of the installation
+	 */
+	public TestopiaRetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+	
+	/**
+	 * @return the pooled HTTP client
+	 */
+	public CloseableHttpClient getHttpClient() {
+		return httpClient;
+	}
+	
+	/**
+	 * @return statistics of the connections leased, available and pending
+	 */
+	public PoolStats getStats() {
+		return connectionManager.getTotalStats();
+	}
+	
+	/**
+	 * @return whether the connections ask for gzip responses
+	 */
+	public boolean isRequestingGzip() {
+		return clientConfig.isGzipRequesting();
+	}
+	
+	/**
+	 * @return whether the connections compress their requests
+	 */
+	public boolean isCompressingRequests() {
+		if(clientConfig.getCompression() == TestopiaClientConfig.Compression.AUTO) {
+			return gzipDetected && !gzipRejected;
+		}
+		return clientConfig.isGzipCompression();
+	}
+	
+	/**
+	 * Called when the server sends a gzip response.
+	 */
+	void gzipResponseReceived() {
+		if(!gzipDetected && clientConfig.getCompression() == TestopiaClientConfig.Compression.AUTO) {
+			gzipDetected = true;
+			LOGGER.log(Level.INFO, "Testopia server at " + url + " supports gzip, compressing requests");
+		}
+	}
+	
+	/**
+	 * Called when the server rejects a compressed request.
+	 * @param status HTTP status of the response
+	 * @return <code>true</code> if the request should be sent again uncompressed
+	 */
+	boolean compressedRequestRejected(int status) {
+		if(clientConfig.getCompression() != TestopiaClientConfig.Compression.AUTO || 
+				status == HttpStatus.SC_UNAUTHORIZED || status == HttpStatus.SC_FORBIDDEN) {
+			return false;
+		}
+		if(!gzipRejected) {
+			gzipRejected = true;
+			LOGGER.log(Level.INFO, "Testopia server at " + url + " rejected a gzip request (HTTP " + status + "), no longer compressing requests");
+		}
+		return true;
+	}
+	
+	/**
+	 * @return <code>false</code> if the server rejected a system.multicall 
+	 * request, and batches must be sent one update per call
+	 */
+	public boolean isMulticallSupported() {
+		return !multicallRejected;
+	}
+	
+	/**
+	 * Called when the server rejects a system.multicall request.
+	 * @param cause fault sent by the server
+	 */
+	void multicallRejected(Throwable cause) {
+		if(!multicallRejected) {
+			multicallRejected = true;
+			LOGGER.log(Level.INFO, "Testopia server at " + url + " rejected a system.multicall request (" + 
+					cause.getMessage() + "), sending one update per call");
+		}
+	}
+	
+	private void closeIdleConnections() {
+		connectionManager.closeExpiredConnections();
+		connectionManager.closeIdleConnections(IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+	}
+	
+	private void shutdown() {
+		try {
+			httpClient.close();
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Failed to shut down the Testopia connection pool for " + url, e);
+		}
+	}
+	
+	/**
+	 * Uses the keep-alive timeout sent by the server, or 
+	 * {@link TestopiaConnectionPool#DEFAULT_KEEP_ALIVE} when there is none.
+	 */
+	private static class KeepAliveStrategy implements ConnectionKeepAliveStrategy {
+		public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+			final long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+			return duration > 0 ? duration : DEFAULT_KEEP_ALIVE;
+		}
+	}
+	
+	/**
+	 * Periodically closes the idle connections of all the pools.
+	 */
+	@Extension
+	public static class IdleConnectionEvictor extends PeriodicWork {
+		@Override
+		public long getRecurrencePeriod() {
+			return IDLE_TIMEOUT / 2;
+		}
+		@Override
+		protected void doRun() throws Exception {
+			evictIdleConnections();
+		}
+	}
+	
+}
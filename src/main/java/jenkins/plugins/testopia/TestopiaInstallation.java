@@ -42,6 +42,13 @@ public class TestopiaInstallation implements Serializable {
 	private final String password;
 	private final String url;
 	private final String properties;
+	private final Integer maxConnections;
+	private final Integer sessionTimeout;
+	private final String compression;
+	private final Integer maxRetries;
+	private final Long retryDelay;
+	private final Integer cacheTimeout;
+	private transient volatile TestopiaClientConfig clientConfig;
 	
 	/**
 	 * @param name
@@ -50,14 +57,39 @@ public class TestopiaInstallation implements Serializable {
 	 * @param url
 	 * @param properties
 	 */
-	@DataBoundConstructor
 	public TestopiaInstallation(String name, String username, String password, String url, String properties) {
+		this(name, username, password, url, properties, null, null, null, null, null, null);
+	}
+	
+	/**
+	 * @param name
+	 * @param username
+	 * @param password
+	 * @param url
+	 * @param properties
+	 * @param maxConnections maximum number of pooled connections to Testopia
+	 * @param sessionTimeout time in minutes a login session is reused
+	 * @param compression compression of the messages, none, gzip or auto
+	 * @param maxRetries maximum number of retries of a call after a transient failure
+	 * @param retryDelay delay in milliseconds before the first retry
+	 * @param cacheTimeout time in minutes the test cases of a test run are cached
+	 */
+	@DataBoundConstructor
+	public TestopiaInstallation(String name, String username, String password, String url, String properties, 
+			Integer maxConnections, Integer sessionTimeout, String compression, Integer maxRetries, Long retryDelay, 
+			Integer cacheTimeout) {
 		super();
 		this.name = name;
 		this.username = username;
 		this.password = password;
 		this.url = url;
 		this.properties = properties;
+		this.maxConnections = maxConnections;
+		this.sessionTimeout = sessionTimeout;
+		this.compression = compression;
+		this.maxRetries = maxRetries;
+		this.retryDelay = retryDelay;
+		this.cacheTimeout = cacheTimeout;
 	}
 
 	/**
@@ -95,4 +127,56 @@ public class TestopiaInstallation implements Serializable {
 		return properties;
 	}
 	
+	/**
+	 * @return the maximum number of pooled connections to Testopia
+	 */
+	public Integer getMaxConnections() {
+		return maxConnections;
+	}
+	
+	/**
+	 * @return the time in minutes a login session is reused
+	 */
+	public Integer getSessionTimeout() {
+		return sessionTimeout;
+	}
+	
+	/**
+	 * @return the compression of the messages, none, gzip or auto
+	 */
+	public String getCompression() {
+		return compression;
+	}
+	
+	/**
+	 * @return the maximum number of retries of a call after a transient failure
+	 */
+	public Integer getMaxRetries() {
+		return maxRetries;
+	}
+	
+	/**
+	 * @return the delay in milliseconds before the first retry
+	 */
+	public Long getRetryDelay() {
+		return retryDelay;
+	}
+	
+	/**
+	 * @return the time in minutes the test cases of a test run are cached
+	 */
+	public Integer getCacheTimeout() {
+		return cacheTimeout;
+	}
+	
+	/**
+	 * @return the XML-RPC client settings, parsed from the properties once
+	 */
+	public TestopiaClientConfig getClientConfig() {
+		if(clientConfig == null) {
+			clientConfig = TestopiaClientConfig.parse(properties, compression);
+		}
+		return clientConfig;
+	}
+	
 }
@@ -24,46 +24,68 @@
 package jenkins.plugins.testopia;
 
 import hudson.model.Action;
+import hudson.model.Api;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.util.ChartUtil;
 import hudson.util.DataSetBuilder;
 
+import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.util.Calendar;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import org.jfree.chart.ChartRenderingInfo;
+import org.jfree.chart.ChartUtilities;
 import org.jfree.chart.JFreeChart;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
 
 /**
  * Testopia project action. This changes projects that are configured to run 
- * Testopia integration.
+ * Testopia integration. The trend of the last builds is exported in the 
+ * remote API, e.g. <code>testopiaResult/api/json</code>, read from the 
+ * trend index of the project.
  * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
  * @since 0.1
  */
+@ExportedBean
 public class TestopiaProjectAction implements Action {
 
 	private static final int DEFAULT_GRAPH_WIDTH  = 500;
 	private static final int DEFAULT_GRAPH_HEIGHT = 200;
+	/**
+	 * Largest graph size accepted from a request, so that arbitrary sizes 
+	 * do not fill the graph cache.
+	 */
+	private static final int MAX_GRAPH_WIDTH  = 2000;
+	private static final int MAX_GRAPH_HEIGHT = 1000;
 	
 	public static final String ICON_FILE_NAME = "/plugin/testopia/icons/testopia-24x24.png";
 	public static final String URL_NAME = "testopiaResult";
 	public static final String DISPLAY_NAME = "Testopia";
+	
+	private static final Logger LOGGER = Logger.getLogger("jenkins.plugins.testopia");
 
+	protected AbstractProject<?, ?> project;
+	
 	/**
-	 * Used to figure out if we need to regenerate the graphs or not. Only used
-	 * in newGraphNotNeeded() method. Key is the request URI and value is the
-	 * number of builds for the project.
+	 * Maximum number of builds displayed in the trend graph. Zero or less 
+	 * displays all the builds.
 	 */
-	private transient Map<String, Integer> requestMap = new HashMap<String, Integer>();
-	
-	protected AbstractProject<?, ?> project;
+	protected int trendWindow;
 	
 	public TestopiaProjectAction(AbstractProject<?, ?> project) {
+		this(project, 0);
+	}
+	
+	public TestopiaProjectAction(AbstractProject<?, ?> project, int trendWindow) {
 		this.project = project;
+		this.trendWindow = trendWindow;
 	}
 	/**
 	 * @return the project
@@ -138,34 +160,66 @@ public class TestopiaProjectAction implements Action {
 			return;
 		}
 
-		if (newGraphNotNeeded(req, res)) {
+		final GraphCache.Graph graph = getGraph(req);
+		if (req.checkIfModified(graph.getTimestamp(), res)) {
 			return;
 		}
-
-		final DataSetBuilder<String, ChartUtil.NumberOnlyBuildLabel> dataSetBuilder = new DataSetBuilder<String, ChartUtil.NumberOnlyBuildLabel>();
-
-		populateDataSetBuilder(dataSetBuilder);
-		new hudson.util.Graph(-1, getGraphWidth(), getGraphHeight()) {
-			protected JFreeChart createGraph() {
-				return GraphHelper.createChart(req, dataSetBuilder.build());
-			}
-		}.doPng(req, res);
+		res.setContentType("image/png");
+		res.getOutputStream().write(graph.getPng());
 	}
 
 	public void doGraphMap(final StaplerRequest req, StaplerResponse res)
 			throws IOException {
-		if (newGraphNotNeeded(req, res)) {
+		final GraphCache.Graph graph = getGraph(req);
+		if (req.checkIfModified(graph.getTimestamp(), res)) {
 			return;
 		}
+		res.setContentType("text/plain;charset=UTF-8");
+		res.getWriter().println(graph.getMap());
+	}
 
-		final DataSetBuilder<String, ChartUtil.NumberOnlyBuildLabel> dataSetBuilder = new DataSetBuilder<String, ChartUtil.NumberOnlyBuildLabel>();
+	/**
+	 * Returns the trend graph from the graph cache, rendering it if the cache 
+	 * has no graph for the current version of the trend index.
+	 * 
+	 * @param req
+	 * @return rendered graph
+	 * @throws IOException
+	 */
+	private GraphCache.Graph getGraph(StaplerRequest req) throws IOException {
+		final int width = getSize(req, "width", getGraphWidth(), MAX_GRAPH_WIDTH);
+		final int height = getSize(req, "height", getGraphHeight(), MAX_GRAPH_HEIGHT);
+		
+		// read before the trend, so a graph is never cached under a newer version
+		final long version = new TrendIndex(getProject()).getVersion();
+		final String key = GraphCache.key(getProject().getFullName(), width, height, trendWindow, version);
+		final GraphCache cache = GraphCache.get();
+		GraphCache.Graph graph = cache.getGraph(key);
+		if (graph == null) {
+			final DataSetBuilder<String, TrendIndex.Entry> dataSetBuilder = new DataSetBuilder<String, TrendIndex.Entry>();
+			populateDataSetBuilder(dataSetBuilder);
+			final JFreeChart chart = GraphHelper.createChart(req, dataSetBuilder.build());
+			final ChartRenderingInfo info = new ChartRenderingInfo();
+			final BufferedImage image = chart.createBufferedImage(width, height, info);
+			graph = new GraphCache.Graph(ChartUtilities.encodeAsPNG(image), ChartUtilities.getImageMap("map", info));
+			cache.putGraph(key, graph);
+		}
+		return graph;
+	}
 
-		populateDataSetBuilder(dataSetBuilder);
-		new hudson.util.Graph(-1, getGraphWidth(), getGraphHeight()) {
-			protected JFreeChart createGraph() {
-				return GraphHelper.createChart(req, dataSetBuilder.build());
+	private static int getSize(StaplerRequest req, String name, int defaultSize, int maxSize) {
+		final String size = req.getParameter(name);
+		if (size != null) {
+			try {
+				final int value = Integer.parseInt(size);
+				if (value > 0) {
+					return Math.min(value, maxSize);
+				}
+			} catch (NumberFormatException nfe) {
+				// use the default size
 			}
-		}.doMap(req, res);
+		}
+		return defaultSize;
 	}
 
 	/**
@@ -179,59 +233,48 @@ public class TestopiaProjectAction implements Action {
 	}
 
 	/**
-	 * If number of builds hasn't changed and if checkIfModified() returns true,
-	 * no need to regenerate the graph. Browser should reuse it's cached image
+	 * Adds the last builds of the trend index to the data set. Only the index 
+	 * is read, the builds are not loaded.
 	 * 
-	 * @param req
-	 * @param res
-	 * @return true, if new image does NOT need to be generated, false otherwise
+	 * @param dataset
 	 */
-	private boolean newGraphNotNeeded(final StaplerRequest req,
-			StaplerResponse res) {
-		boolean newGraphNotNeeded = false;
-		Calendar t = getProject().getLastCompletedBuild().getTimestamp();
-		Integer prevNumBuilds = requestMap.get(req.getRequestURI());
-		int numBuilds = getProject().getBuilds().size();
-
-		// change null to 0
-		prevNumBuilds = prevNumBuilds == null ? 0 : prevNumBuilds;
-		if (prevNumBuilds != numBuilds) {
-			requestMap.put(req.getRequestURI(), numBuilds);
-		}
-
-		if (requestMap.keySet().size() > 10) {
-			// keep map size in check
-			requestMap.clear();
+	protected void populateDataSetBuilder(
+			DataSetBuilder<String, TrendIndex.Entry> dataset) {
+		final List<TrendIndex.Entry> trend;
+		try {
+			trend = new TrendIndex(getProject()).read(trendWindow);
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Failed to read Testopia trend index of " + getProject().getName(), e);
+			return;
 		}
-
-		if (prevNumBuilds == numBuilds && req.checkIfModified(t, res)) {
-			/*
-			 * checkIfModified() is after '&&' because we want it evaluated only
-			 * if number of builds is different
-			 */
-			newGraphNotNeeded = true;
+		for (TrendIndex.Entry entry : trend) {
+			dataset.add(entry.getBlocked(), "Blocked", entry);
+			dataset.add(entry.getFailed(), "Failed", entry);
+			dataset.add(entry.getNotRun(), "Not Run", entry);
+			dataset.add(entry.getPassed(), "Passed", entry);
 		}
-
-		return newGraphNotNeeded;
 	}
-
-	protected void populateDataSetBuilder(
-			DataSetBuilder<String, ChartUtil.NumberOnlyBuildLabel> dataset) {
-		for (AbstractBuild<?, ?> build = getProject().getLastBuild(); build != null; build = build
-				.getPreviousBuild()) {
-			ChartUtil.NumberOnlyBuildLabel label = new ChartUtil.NumberOnlyBuildLabel(
-					build);
-			TestopiaBuildAction action = build.getAction(getBuildActionClass());
-			if (action != null) {
-				final TestopiaResult result = action.getResult();
-				final Report report = result.getReport();
-				dataset.add(report.getBlocked(), "Blocked", label);
-				dataset.add(report.getFailed(), "Failed", label);
-				dataset.add(report.getNotRun(), "Not Run", label);
-				dataset.add(report.getPassed(), "Passed", label);
-			}
+	public Api getApi() {
+		return new Api(this);
+	}
+	/**
+	 * @return the counters of the last builds, oldest first
+	 */
+	@Exported
+	public List<TrendIndex.Entry> getTrend() {
+		try {
+			return new TrendIndex(getProject()).read(trendWindow);
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Failed to read Testopia trend index of " + getProject().getName(), e);
+			return Collections.emptyList();
 		}
 	}
+	/**
+	 * @return the trendWindow
+	 */
+	public int getTrendWindow() {
+		return trendWindow;
+	}
 
 	/**
 	 * Getter for property 'graphWidth'.
@@ -23,17 +23,36 @@
  */
 package jenkins.plugins.testopia;
 
+import hudson.model.Api;
 import hudson.model.AbstractBuild;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+import org.mozilla.testopia.model.Status;
 
 /**
+ * Testopia result of a build. Exposes the report counters and pages of 
+ * the test cases in the remote API, e.g. 
+ * <code>testopiaResult/api/json</code> and 
+ * <code>testopiaResult/testCases/api/json?start=0&amp;limit=100&amp;status=FAILED</code>.
+ * 
  * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
  * @since 0.1
  */
+@ExportedBean
 public class TestopiaResult implements Serializable {
 
 	private static final long serialVersionUID = 3355678827881770594L;
+	
+	private static final Logger LOGGER = Logger.getLogger("jenkins.plugins.testopia");
 
 	private Report report;
 	private AbstractBuild<?, ?> build;
@@ -51,4 +70,86 @@ public class TestopiaResult implements Serializable {
 		return this.report;
 	}
 
+	public Api getApi() {
+		return new Api(this);
+	}
+
+	@Exported
+	public int getRunId() {
+		return this.report.getRunId();
+	}
+
+	@Exported
+	public int getBuildId() {
+		return this.report.getBuildId();
+	}
+
+	@Exported
+	public int getEnvId() {
+		return this.report.getEnvId();
+	}
+
+	@Exported
+	public int getPassed() {
+		return this.report.getPassed();
+	}
+
+	@Exported
+	public int getFailed() {
+		return this.report.getFailed();
+	}
+
+	@Exported
+	public int getBlocked() {
+		return this.report.getBlocked();
+	}
+
+	@Exported
+	public int getNotRun() {
+		return this.report.getNotRun();
+	}
+
+	@Exported
+	public int getTestsTotal() {
+		return this.report.getTestsTotal();
+	}
+
+	/**
+	 * Returns a page of the test cases. The request parameters <code>start</code>, 
+	 * <code>limit</code> and <code>status</code> select the page.
+	 * 
+	 * @param req Stapler request
+	 * @return page of test cases
+	 */
+	public TestCasePage getTestCases(StaplerRequest req) {
+		return this.getTestCases(
+				TestCasePage.parseInt(req.getParameter("start"), 0), 
+				TestCasePage.parseInt(req.getParameter("limit"), TestCasePage.DEFAULT_LIMIT), 
+				TestCasePage.parseStatus(req.getParameter("status")));
+	}
+
+	/**
+	 * Returns a page of the test cases. When the test cases of the report 
+	 * are not loaded, only the page is read from the report file.
+	 * 
+	 * @param start index of the first test case, among the ones with the status
+	 * @param limit maximum number of test cases in the page
+	 * @param status status of the test cases, or <code>null</code> for all
+	 * @return page of test cases
+	 */
+	public TestCasePage getTestCases(int start, int limit, Status status) {
+		if(!this.report.isLoaded() && this.build != null) {
+			final File file = new File(this.build.getRootDir(), Report.FILE_NAME);
+			if(file.exists()) {
+				try {
+					return Report.loadPage(file, start, limit, status);
+				} catch (IOException e) {
+					LOGGER.log(Level.WARNING, "Failed to load Testopia report " + file, e);
+				}
+			}
+			return new TestCasePage(start, limit, status, 0, Collections.<TestCasePage.TestCaseStatus>emptyList());
+		}
+		return new TestCasePage(this.report, start, limit, status);
+	}
+
 }
@@ -0,0 +1,120 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2012> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.testopia;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.http.HttpStatus;
+import org.apache.xmlrpc.XmlRpcException;
+import org.apache.xmlrpc.client.XmlRpcHttpTransportException;
+
+/**
+ * <p>How calls to Testopia are retried after a transient failure: an I/O 
+ * error, a timeout, or a gateway error returned while the server is busy 
+ * or restarting. Faults returned by Testopia itself are not retried.</p>
+ * 
+ * <p>The delay before each retry grows exponentially from the base delay, 
+ * up to {@link #MAX_DELAY}, with a random jitter so that builds retrying at 
+ * the same time do not hit the server together again.</p>
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 1.4
+ */
+public final class TestopiaRetryPolicy {
+
+	/**
+	 * Default number of retries of a call.
+	 */
+	public static final int DEFAULT_MAX_RETRIES = 3;
+	/**
+	 * Default delay before the first retry, in milliseconds.
+	 */
+	public static final long DEFAULT_DELAY = 1000L;
+	/**
+	 * Maximum delay before a retry, in milliseconds.
+	 */
+	public static final long MAX_DELAY = 30 * 1000L;
+	
+	private static final Random RANDOM = new Random();
+	
+	private final int maxRetries;
+	private final long delay;
+	
+	/**
+	 * @param maxRetries maximum number of retries of a call, zero disables retries
+	 * @param delay delay before the first retry, in milliseconds
+	 */
+	public TestopiaRetryPolicy(int maxRetries, long delay) {
+		this.maxRetries = Math.max(0, maxRetries);
+		this.delay = Math.max(0L, delay);
+	}
+	
+	/**
+	 * @return the maximum number of retries of a call
+	 */
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+	
+	/**
+	 * @return the delay before the first retry, in milliseconds
+	 */
+	public long getDelay() {
+		return delay;
+	}
+	
+	/**
+	 * @param retry retry number, starting at 1
+	 * @return the delay before the retry, in milliseconds, between half and 
+	 * all of the exponential delay
+	 */
+	public long getDelay(int retry) {
+		final long exponential = Math.min(MAX_DELAY, delay << Math.min(retry - 1, 16));
+		final long half = exponential / 2;
+		synchronized(RANDOM) {
+			return half + (long) (RANDOM.nextDouble() * (exponential - half));
+		}
+	}
+	
+	/**
+	 * @param e error of a call to Testopia
+	 * @return <code>true</code> if the call may succeed when retried
+	 */
+	public static boolean isTransient(XmlRpcException e) {
+		if(e instanceof XmlRpcHttpTransportException) {
+			final int status = ((XmlRpcHttpTransportException) e).getStatusCode();
+			return status == HttpStatus.SC_BAD_GATEWAY || 
+					status == HttpStatus.SC_SERVICE_UNAVAILABLE || 
+					status == HttpStatus.SC_GATEWAY_TIMEOUT;
+		}
+		for(Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+			if(cause instanceof IOException) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+}
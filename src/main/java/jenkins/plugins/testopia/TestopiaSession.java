@@ -0,0 +1,223 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2012> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.testopia;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.http.client.CookieStore;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.xmlrpc.XmlRpcException;
+import org.apache.xmlrpc.client.XmlRpcClient;
+import org.apache.xmlrpc.client.XmlRpcHttpTransportException;
+import org.mozilla.testopia.service.xmlrpc.XmlRpcMiscService;
+
+/**
+ * <p>Authenticated session with a Testopia installation, shared by all the 
+ * connections of a {@link TestopiaConnectionPool}. The login cookies are 
+ * kept in a single cookie store, so a build reuses the session opened by a 
+ * previous build instead of logging in again.</p>
+ * 
+ * <p>The session expires after its time to live. When Testopia rejects a 
+ * request because the session is no longer valid, the transport logs in 
+ * again and retries the request once. Concurrent connections that hit the 
+ * same expired session log in only once, the others retry with the new 
+ * session.</p>
+ * 
+ * <p>Logins are serialized by a lock taken only by the connections that log 
+ * in, or that had a request rejected. Requests with a valid session read 
+ * the session generation without locking, so a slow login does not stall 
+ * them.</p>
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 1.4
+ */
+public final class TestopiaSession {
+
+	private static final Logger LOGGER = Logger.getLogger("jenkins.plugins.testopia");
+	
+	/**
+	 * Default time to live of a session, in minutes.
+	 */
+	public static final int DEFAULT_TIMEOUT = 30;
+	/**
+	 * XML-RPC method used to log in.
+	 */
+	public static final String LOGIN_METHOD = "User.login";
+	/**
+	 * Bugzilla fault code for requests that require a login.
+	 */
+	public static final int LOGIN_REQUIRED = 410;
+	/**
+	 * HTTP status for requests without valid credentials.
+	 */
+	private static final int HTTP_UNAUTHORIZED = 401;
+	
+	private final CookieStore cookieStore = new BasicCookieStore();
+	private final long timeToLive;
+	private final AtomicInteger hits = new AtomicInteger(0);
+	private final AtomicInteger logins = new AtomicInteger(0);
+	private final AtomicInteger relogins = new AtomicInteger(0);
+	/**
+	 * Guards the logins, and the credentials and expiry of the session.
+	 */
+	private final Object loginLock = new Object();
+	private String username;
+	private String password;
+	private long expires = 0L;
+	/**
+	 * Incremented after each login, so connections can tell whether the 
+	 * session was renewed since their request was sent.
+	 */
+	private volatile int generation = 0;
+	
+	/**
+	 * @param timeToLive time to live of the session in milliseconds. Zero 
+	 * or less disables reusing the session between logins.
+	 */
+	public TestopiaSession(long timeToLive) {
+		this.timeToLive = timeToLive;
+	}
+	
+	/**
+	 * @return the cookie store of the session
+	 */
+	public CookieStore getCookieStore() {
+		return cookieStore;
+	}
+	
+	/**
+	 * @return the time to live of the session in milliseconds
+	 */
+	public long getTimeToLive() {
+		return timeToLive;
+	}
+	
+	/**
+	 * @return number of logins answered with the cached session
+	 */
+	public int getHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * @return number of logins sent to Testopia
+	 */
+	public int getLogins() {
+		return logins.get();
+	}
+	
+	/**
+	 * @return number of logins sent to Testopia after the session was rejected
+	 */
+	public int getRelogins() {
+		return relogins.get();
+	}
+	
+	/**
+	 * @return the session generation
+	 */
+	public int getGeneration() {
+		return generation;
+	}
+	
+	/**
+	 * Logs in to Testopia, unless the cached session belongs to the same user 
+	 * and has not expired.
+	 * @param client XML-RPC client using the cookie store of this session
+	 * @param username
+	 * @param password
+	 * @return <code>true</code> if the cached session was reused
+	 */
+	public boolean login(XmlRpcClient client, String username, String password) {
+		synchronized(loginLock) {
+			cookieStore.clearExpired(new Date());
+			if(timeToLive > 0 && System.currentTimeMillis() < expires && 
+					equals(this.username, username) && equals(this.password, password) && 
+					!cookieStore.getCookies().isEmpty()) {
+				hits.incrementAndGet();
+				return true;
+			}
+			this.doLogin(client, username, password);
+			return false;
+		}
+	}
+	
+	/**
+	 * Logs in again after Testopia rejected a request, unless another 
+	 * connection already did it since the request was sent.
+	 * @param client XML-RPC client using the cookie store of this session
+	 * @param requestGeneration session generation when the request was sent
+	 * @return <code>false</code> if there are no credentials to log in with
+	 */
+	public boolean relogin(XmlRpcClient client, int requestGeneration) {
+		synchronized(loginLock) {
+			if(username == null) {
+				return false;
+			}
+			if(requestGeneration == generation) {
+				relogins.incrementAndGet();
+				this.doLogin(client, username, password);
+			}
+			return true;
+		}
+	}
+	
+	/**
+	 * @param e error returned by Testopia
+	 * @return <code>true</code> if the request was rejected for lack of a 
+	 * valid session
+	 */
+	public static boolean isAuthenticationFailure(XmlRpcException e) {
+		if(e instanceof XmlRpcHttpTransportException) {
+			return ((XmlRpcHttpTransportException) e).getStatusCode() == HTTP_UNAUTHORIZED;
+		}
+		return e.code == LOGIN_REQUIRED;
+	}
+	
+	/**
+	 * Logs in, holding the login lock.
+	 */
+	private void doLogin(XmlRpcClient client, String username, String password) {
+		cookieStore.clear();
+		expires = 0L;
+		new XmlRpcMiscService(client).login(username, password);
+		logins.incrementAndGet();
+		this.username = username;
+		this.password = password;
+		this.expires = System.currentTimeMillis() + timeToLive;
+		generation++;
+		if(LOGGER.isLoggable(Level.FINE)) {
+			LOGGER.log(Level.FINE, "Logged in to Testopia as " + username + 
+					" (session hits: " + hits.get() + ", logins: " + logins.get() + ", re-logins: " + relogins.get() + ")");
+		}
+	}
+	
+	private static boolean equals(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+	
+}
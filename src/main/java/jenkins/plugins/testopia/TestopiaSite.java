@@ -23,8 +23,12 @@
  */
 package jenkins.plugins.testopia;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import jenkins.plugins.testopia.result.TestCaseWrapper;
 
@@ -35,10 +39,34 @@ import org.mozilla.testopia.model.TestRun;
 
 /**
  * Testopia site.
+ * 
+ * <p>Test case updates are queued and sent to Testopia in batches. A batch is 
+ * flushed when the queue reaches the batch size, or when an update is queued 
+ * after the flush interval has elapsed since the last flush. There is no 
+ * timer: the flush interval is only checked when an update is queued. The 
+ * remaining updates are sent when {@link #flush()} is called.</p>
+ * 
+ * <p>Over a {@link TestopiaConnection}, a batch is sent as a single 
+ * system.multicall request, see {@link TestopiaConnection#update(List)}.</p>
+ * 
+ * <p>When an {@link UpdatePublisher} is given, batches are handed off to its 
+ * workers and sent in parallel, so the result seekers do not wait for 
+ * Testopia. Call {@link #waitForUpdates()} before using the report.</p>
+ * 
+ * <p>When an {@link UpdateSpool} is given, batches are written to the spool 
+ * instead, and sent to Testopia after the build.</p>
+ * 
+ * <p>When a {@link StatusBaseline} is given, an update that does not change 
+ * the status of its test case is added to the report without being sent.</p>
+ * 
  * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
  * @since 0.1
  */
 public class TestopiaSite {
+	/**
+	 * Default batch size, one update per batch.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 1;
 	/**
 	 * Testopia API.
 	 */
@@ -47,13 +75,124 @@ public class TestopiaSite {
 	 * Report.
 	 */
 	protected final Report report;
+	/**
+	 * Maximum number of test case updates sent in a batch.
+	 */
+	private final int batchSize;
+	/**
+	 * Maximum time in milliseconds between two flushes, checked when an 
+	 * update is queued. Zero or less disables the time flush policy.
+	 */
+	private final long flushInterval;
+	/**
+	 * Test case updates waiting to be sent to Testopia.
+	 */
+	private final List<TestCaseWrapper> pendingUpdates;
+	/**
+	 * Errors found while sending batches of updates.
+	 */
+	private final List<UpdateError> updateErrors;
+	/**
+	 * Publisher for sending batches asynchronously, may be <code>null</code>.
+	 */
+	private final UpdatePublisher publisher;
+	/**
+	 * Spool for sending batches after the build, may be <code>null</code>.
+	 */
+	private final UpdateSpool spool;
+	/**
+	 * Test run data loaded at the start of the build, may be <code>null</code>.
+	 */
+	private final TestRunSnapshot snapshot;
+	/**
+	 * Statuses known before the build, may be <code>null</code>.
+	 */
+	private final StatusBaseline baseline;
+	/**
+	 * Number of updates not sent because they did not change the status.
+	 */
+	private final AtomicInteger unchangedCount = new AtomicInteger(0);
+	/**
+	 * Number of batches sent so far.
+	 */
+	private final AtomicInteger batchCount = new AtomicInteger(0);
+	/**
+	 * Time of the last flush.
+	 */
+	private long lastFlush;
 	/**
 	 * Constructor with args.
 	 * @param api
 	 */
 	public TestopiaSite(TestopiaAPI api) {
+		this(api, DEFAULT_BATCH_SIZE, 0L);
+	}
+	/**
+	 * Constructor with args.
+	 * @param api
+	 * @param batchSize maximum number of updates sent in a batch
+	 * @param flushInterval maximum time in milliseconds between two flushes
+	 */
+	public TestopiaSite(TestopiaAPI api, int batchSize, long flushInterval) {
+		this(api, batchSize, flushInterval, null);
+	}
+	/**
+	 * Constructor with args.
+	 * @param api
+	 * @param batchSize maximum number of updates sent in a batch
+	 * @param flushInterval maximum time in milliseconds between two flushes
+	 * @param publisher publisher for sending batches asynchronously, or <code>null</code>
+	 */
+	public TestopiaSite(TestopiaAPI api, int batchSize, long flushInterval, UpdatePublisher publisher) {
+		this(api, batchSize, flushInterval, publisher, null);
+	}
+	/**
+	 * Constructor with args.
+	 * @param api
+	 * @param batchSize maximum number of updates sent in a batch
+	 * @param flushInterval maximum time in milliseconds between two flushes
+	 * @param publisher publisher for sending batches asynchronously, or <code>null</code>
+	 * @param spool spool for sending batches after the build, or <code>null</code>
+	 */
+	public TestopiaSite(TestopiaAPI api, int batchSize, long flushInterval, UpdatePublisher publisher, UpdateSpool spool) {
+		this(api, batchSize, flushInterval, publisher, spool, null);
+	}
+	/**
+	 * Constructor with args.
+	 * @param api
+	 * @param batchSize maximum number of updates sent in a batch
+	 * @param flushInterval maximum time in milliseconds between two flushes
+	 * @param publisher publisher for sending batches asynchronously, or <code>null</code>
+	 * @param spool spool for sending batches after the build, or <code>null</code>
+	 * @param baseline statuses known before the build, or <code>null</code> to send all the updates
+	 */
+	public TestopiaSite(TestopiaAPI api, int batchSize, long flushInterval, UpdatePublisher publisher, UpdateSpool spool, 
+			StatusBaseline baseline) {
+		this(api, batchSize, flushInterval, publisher, spool, baseline, null);
+	}
+	/**
+	 * Constructor with args.
+	 * @param api
+	 * @param batchSize maximum number of updates sent in a batch
+	 * @param flushInterval maximum time in milliseconds between two flushes
+	 * @param publisher publisher for sending batches asynchronously, or <code>null</code>
+	 * @param spool spool for sending batches after the build, or <code>null</code>
+	 * @param baseline statuses known before the build, or <code>null</code> to send all the updates
+	 * @param snapshot test run data loaded at the start of the build, or <code>null</code>
+	 */
+	public TestopiaSite(TestopiaAPI api, int batchSize, long flushInterval, UpdatePublisher publisher, UpdateSpool spool, 
+			StatusBaseline baseline, TestRunSnapshot snapshot) {
 		this.api = api;
 		this.report = new Report();
+		this.batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+		this.flushInterval = flushInterval;
+		this.pendingUpdates = new LinkedList<TestCaseWrapper>();
+		this.updateErrors = Collections.synchronizedList(new ArrayList<UpdateError>());
+		this.publisher = publisher;
+		this.spool = spool;
+		this.baseline = baseline;
+		this.snapshot = snapshot;
+		this.lastFlush = System.currentTimeMillis();
 	}
 	/**
 	 * @return the api
@@ -67,6 +206,39 @@ public class TestopiaSite {
 	public Report getReport() {
 		return report;
 	}
+	/**
+	 * @return the test run data loaded at the start of the build, with the 
+	 * test case runs, or <code>null</code>
+	 */
+	public TestRunSnapshot getSnapshot() {
+		return snapshot;
+	}
+	/**
+	 * @return the batchSize
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+	/**
+	 * @return the number of batches sent so far
+	 */
+	public int getBatchCount() {
+		return batchCount.get();
+	}
+	/**
+	 * @return the number of updates not sent because they did not change the status
+	 */
+	public int getUnchangedCount() {
+		return unchangedCount.get();
+	}
+	/**
+	 * @return the errors found while sending batches of updates
+	 */
+	public List<UpdateError> getUpdateErrors() {
+		synchronized(updateErrors) {
+			return new ArrayList<UpdateError>(updateErrors);
+		}
+	}
 	/**
 	 * Filter an array of test cases for automated test cases only.
 	 * @param testRun 
@@ -90,26 +262,195 @@ public class TestopiaSite {
 		return automatedTestCases.toArray(new TestCaseWrapper[0]);
 	}
 	/**
+	 * Filter the test cases of a snapshot for automated test cases only.
+	 * @param snapshot test run data
+	 * @return filtered array of automated test cases
+	 */
+	public TestCaseWrapper[] getTestCases(TestRunSnapshot snapshot) {
+		return this.getTestCases(snapshot.getTestRun(), snapshot.getTestCases());
+	}
+	/**
+	 * Queues the test case status to be sent to Testopia. The status is copied, 
+	 * so later changes to the test case do not affect the queued update. If 
+	 * the status is the same as in the baseline, it is only added to the report.
 	 * @param tc
 	 */
 	public void updateTestCase(TestCaseWrapper tc) {
 		if(tc.getStatusId() != null) { // twas: Status.IDLE.getValue()
-			this.api.update(tc, tc.getRunId(), tc.getBuildId(), tc.getEnvId());
-			Status executionStatus = Status.get(tc.getStatusId());
-			switch(executionStatus) {
-			case PASSED:
-				report.setPassed(report.getPassed()+1);
-				break;
-			case FAILED:
-				report.setFailed(report.getFailed()+1);
-				break;
-			case BLOCKED:
-				report.setBlocked(report.getBlocked()+1);
-				break;
-			default:
-				break;
+			final TestCaseWrapper update = new TestCaseWrapper(tc, tc.getRunId(), tc.getBuildId(), tc.getEnvId());
+			update.setTestRun(tc.getTestRun());
+			if(baseline != null && baseline.isUnchanged(update)) {
+				unchangedCount.incrementAndGet();
+				this.addToReport(update);
+				return;
+			}
+			pendingUpdates.add(update);
+			if(pendingUpdates.size() >= batchSize || 
+					(flushInterval > 0 && System.currentTimeMillis() - lastFlush >= flushInterval)) {
+				this.flush();
+			}
+		}
+	}
+	/**
+	 * Sends all the queued updates to Testopia, in batches.
+	 */
+	public void flush() {
+		while(!pendingUpdates.isEmpty()) {
+			final List<TestCaseWrapper> batch = new ArrayList<TestCaseWrapper>(Math.min(batchSize, pendingUpdates.size()));
+			while(batch.size() < batchSize && !pendingUpdates.isEmpty()) {
+				batch.add(pendingUpdates.remove(0));
 			}
-			report.addTestCase(tc);
+			this.sendBatch(batch);
+		}
+		lastFlush = System.currentTimeMillis();
+	}
+	/**
+	 * Waits until all the batches handed off to the publisher have been sent.
+	 * @throws InterruptedException
+	 */
+	public void waitForUpdates() throws InterruptedException {
+		if(publisher != null) {
+			publisher.waitForCompletion();
+		}
+	}
+	/**
+	 * @return the spool, or <code>null</code> if updates are sent during the build
+	 */
+	public UpdateSpool getSpool() {
+		return spool;
+	}
+	/**
+	 * Sends a batch of updates to Testopia, hands it off to the publisher, or 
+	 * writes it to the spool.
+	 * @param batch
+	 */
+	private void sendBatch(final List<TestCaseWrapper> batch) {
+		final int batchNumber = batchCount.incrementAndGet();
+		if(spool != null) {
+			this.spoolBatch(batchNumber, batch);
+		} else if(publisher == null) {
+			this.sendBatch(api, batchNumber, batch);
+		} else {
+			publisher.publish(new UpdatePublisher.Task() {
+				public void run(TestopiaAPI connection) {
+					sendBatch(connection, batchNumber, batch);
+				}
+				public void failed(Throwable cause) {
+					for(TestCaseWrapper tc : batch) {
+						updateErrors.add(new UpdateError(batchNumber, tc.getId(), cause));
+					}
+				}
+			});
+		}
+	}
+	/**
+	 * Sends a batch of updates to Testopia, in a single request over a 
+	 * {@link TestopiaConnection}. A failed update does not stop the batch, 
+	 * it is recorded in the list of update errors instead.
+	 * @param connection Testopia connection
+	 * @param batchNumber
+	 * @param batch
+	 */
+	private void sendBatch(TestopiaAPI connection, int batchNumber, List<TestCaseWrapper> batch) {
+		if(connection instanceof TestopiaConnection) {
+			final List<RuntimeException> failures;
+			try {
+				failures = ((TestopiaConnection) connection).update(batch);
+			} catch (RuntimeException e) {
+				for(TestCaseWrapper tc : batch) {
+					updateErrors.add(new UpdateError(batchNumber, tc.getId(), e));
+				}
+				return;
+			}
+			for(int i = 0; i < batch.size(); i++) {
+				final TestCaseWrapper tc = batch.get(i);
+				if(failures.get(i) != null) {
+					updateErrors.add(new UpdateError(batchNumber, tc.getId(), failures.get(i)));
+				} else {
+					this.addToReport(tc);
+				}
+			}
+			return;
+		}
+		for(TestCaseWrapper tc : batch) {
+			try {
+				connection.update(tc, tc.getRunId(), tc.getBuildId(), tc.getEnvId());
+			} catch (RuntimeException e) {
+				updateErrors.add(new UpdateError(batchNumber, tc.getId(), e));
+				continue;
+			}
+			this.addToReport(tc);
+		}
+	}
+	/**
+	 * Writes a batch of updates to the spool. If the spool cannot be written, 
+	 * the whole batch is recorded in the list of update errors.
+	 * @param batchNumber
+	 * @param batch
+	 */
+	private void spoolBatch(int batchNumber, List<TestCaseWrapper> batch) {
+		try {
+			spool.append(batch);
+		} catch (IOException e) {
+			for(TestCaseWrapper tc : batch) {
+				updateErrors.add(new UpdateError(batchNumber, tc.getId(), e));
+			}
+			return;
+		}
+		for(TestCaseWrapper tc : batch) {
+			this.addToReport(tc);
+		}
+	}
+	/**
+	 * Adds an updated test case to the report.
+	 * @param tc
+	 */
+	private synchronized void addToReport(TestCaseWrapper tc) {
+		Status executionStatus = Status.get(tc.getStatusId());
+		switch(executionStatus) {
+		case PASSED:
+			report.setPassed(report.getPassed()+1);
+			break;
+		case FAILED:
+			report.setFailed(report.getFailed()+1);
+			break;
+		case BLOCKED:
+			report.setBlocked(report.getBlocked()+1);
+			break;
+		default:
+			break;
+		}
+		report.addTestCase(tc);
+	}
+	/**
+	 * Error found while sending a batch of updates to Testopia.
+	 */
+	public static class UpdateError {
+		private final int batch;
+		private final Integer testCaseId;
+		private final Throwable cause;
+		public UpdateError(int batch, Integer testCaseId, Throwable cause) {
+			this.batch = batch;
+			this.testCaseId = testCaseId;
+			this.cause = cause;
+		}
+		/**
+		 * @return the batch number
+		 */
+		public int getBatch() {
+			return batch;
+		}
+		/**
+		 * @return the testCaseId
+		 */
+		public Integer getTestCaseId() {
+			return testCaseId;
+		}
+		/**
+		 * @return the cause
+		 */
+		public Throwable getCause() {
+			return cause;
 		}
 	}
 }
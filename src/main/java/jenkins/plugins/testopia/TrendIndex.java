@@ -0,0 +1,372 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2012> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.testopia;
+
+import hudson.Extension;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.listeners.RunListener;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * <p>Append-only trend index of a project. For each build with Testopia 
+ * results, it stores the build number and the passed, failed, blocked and 
+ * not run counters as a fixed-size record, in a file in the project 
+ * directory.</p>
+ * 
+ * <p>The trend graphs read only the last records of the index, instead of 
+ * loading every build of the project. When the index file does not exist 
+ * yet, it is rebuilt from the builds of the project.</p>
+ * 
+ * <p>The records of deleted builds, e.g. discarded by the log rotation, are 
+ * removed by the {@link Pruner}, so reading the index never loads the 
+ * builds.</p>
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 1.4
+ */
+public class TrendIndex {
+
+	/**
+	 * Name of the index file, in the project directory.
+	 */
+	public static final String FILE_NAME = "testopia-trend.dat";
+	
+	/**
+	 * Size of a record: build number, passed, failed, blocked and not run.
+	 */
+	private static final int RECORD_SIZE = 5 * 4;
+	
+	private static final Logger LOGGER = Logger.getLogger("jenkins.plugins.testopia");
+	
+	/**
+	 * Lock of each index file, so that the index of a project does not wait 
+	 * for the others.
+	 */
+	private static final ConcurrentMap<String, Lock> LOCKS = new ConcurrentHashMap<String, Lock>();
+	
+	private final AbstractProject<?, ?> project;
+	private final File file;
+	private final Lock lock;
+	
+	/**
+	 * @param project
+	 */
+	public TrendIndex(AbstractProject<?, ?> project) {
+		this.project = project;
+		this.file = new File(project.getRootDir(), FILE_NAME);
+		final String path = file.getAbsolutePath();
+		LOCKS.putIfAbsent(path, new Lock());
+		this.lock = LOCKS.get(path);
+	}
+	
+	/**
+	 * @return a number that changes each time the index is written, e.g. to 
+	 * key the graphs drawn from it
+	 */
+	public long getVersion() {
+		synchronized(lock) {
+			return lock.version;
+		}
+	}
+	
+	/**
+	 * Appends the counters of a build report to the index. If the index does 
+	 * not exist yet, it is rebuilt from the builds of the project instead.
+	 * 
+	 * @param build build
+	 * @param report build report
+	 * @throws IOException
+	 */
+	public void append(AbstractBuild<?, ?> build, Report report) throws IOException {
+		synchronized(lock) {
+			if(!file.exists()) {
+				this.rebuild();
+				return;
+			}
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+			try {
+				write(out, build.getNumber(), report);
+			} finally {
+				out.close();
+				lock.version++;
+			}
+		}
+	}
+	
+	/**
+	 * Reads the last entries of the index, oldest first.
+	 * 
+	 * @param window maximum number of builds, or zero or less for all
+	 * @return trend entries
+	 * @throws IOException
+	 */
+	public List<Entry> read(int window) throws IOException {
+		synchronized(lock) {
+			if(!file.exists()) {
+				this.rebuild();
+			}
+			final Map<Integer, Entry> entries = new LinkedHashMap<Integer, Entry>();
+			final RandomAccessFile in = new RandomAccessFile(file, "r");
+			try {
+				final long records = in.length() / RECORD_SIZE;
+				final long first = window > 0 ? Math.max(0, records - window) : 0;
+				final byte[] data = new byte[(int) ((records - first) * RECORD_SIZE)];
+				in.seek(first * RECORD_SIZE);
+				in.readFully(data);
+				final IntBuffer ints = ByteBuffer.wrap(data).asIntBuffer();
+				while(ints.remaining() >= 5) {
+					final Entry entry = new Entry(ints.get(), ints.get(), ints.get(), ints.get(), ints.get());
+					entries.remove(entry.getBuildNumber());
+					entries.put(entry.getBuildNumber(), entry);
+				}
+			} finally {
+				in.close();
+			}
+			return new ArrayList<Entry>(entries.values());
+		}
+	}
+	
+	/**
+	 * Removes the entries of builds from the index.
+	 * 
+	 * @param buildNumbers build numbers
+	 * @throws IOException
+	 */
+	public void remove(Set<Integer> buildNumbers) throws IOException {
+		synchronized(lock) {
+			this.removeAll(buildNumbers);
+		}
+	}
+	
+	private void removeAll(Set<Integer> buildNumbers) throws IOException {
+		if(!file.exists()) {
+			return;
+		}
+		final File tmp = new File(file.getParentFile(), FILE_NAME + ".tmp");
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				while(true) {
+					final int buildNumber;
+					try {
+						buildNumber = in.readInt();
+					} catch (EOFException e) {
+						break;
+					}
+					final int passed = in.readInt();
+					final int failed = in.readInt();
+					final int blocked = in.readInt();
+					final int notRun = in.readInt();
+					if(!buildNumbers.contains(buildNumber)) {
+						out.writeInt(buildNumber);
+						out.writeInt(passed);
+						out.writeInt(failed);
+						out.writeInt(blocked);
+						out.writeInt(notRun);
+					}
+				}
+			} finally {
+				out.close();
+			}
+		} catch (EOFException e) {
+			// a record cut short is dropped
+		} finally {
+			in.close();
+		}
+		replace(tmp, file);
+		lock.version++;
+	}
+	
+	/**
+	 * Rebuilds the index from the builds of the project, oldest first.
+	 * @throws IOException
+	 */
+	private void rebuild() throws IOException {
+		final List<AbstractBuild<?, ?>> builds = new ArrayList<AbstractBuild<?, ?>>();
+		for (AbstractBuild<?, ?> build = project.getLastBuild(); build != null; build = build.getPreviousBuild()) {
+			builds.add(build);
+		}
+		final File tmp = new File(file.getParentFile(), FILE_NAME + ".tmp");
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			for(int i = builds.size() - 1; i >= 0; i--) {
+				final AbstractBuild<?, ?> build = builds.get(i);
+				final TestopiaBuildAction action = build.getAction(TestopiaBuildAction.class);
+				if(action != null) {
+					write(out, build.getNumber(), action.getReport());
+				}
+			}
+		} finally {
+			out.close();
+		}
+		replace(tmp, file);
+		lock.version++;
+	}
+	
+	private static void replace(File tmp, File file) throws IOException {
+		if(!tmp.renameTo(file)) {
+			// renaming over an existing file fails on some platforms
+			file.delete();
+			if(!tmp.renameTo(file)) {
+				tmp.delete();
+				throw new IOException("Failed to write Testopia trend index " + file);
+			}
+		}
+	}
+	
+	private static void write(DataOutputStream out, int buildNumber, Report report) throws IOException {
+		out.writeInt(buildNumber);
+		out.writeInt(report.getPassed());
+		out.writeInt(report.getFailed());
+		out.writeInt(report.getBlocked());
+		out.writeInt(report.getNotRun());
+	}
+	
+	/**
+	 * Lock of an index file, with the version of the index.
+	 */
+	private static final class Lock {
+		private long version = 0L;
+	}
+	
+	/**
+	 * Removes the entry of a build from the trend index of its project when 
+	 * the build is deleted.
+	 */
+	@Extension
+	@SuppressWarnings("rawtypes")
+	public static class Pruner extends RunListener<AbstractBuild> {
+		public Pruner() {
+			super(AbstractBuild.class);
+		}
+		@Override
+		public void onDeleted(AbstractBuild build) {
+			if(build.getAction(TestopiaBuildAction.class) == null) {
+				return;
+			}
+			try {
+				new TrendIndex(build.getProject()).remove(Collections.singleton(build.getNumber()));
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Failed to remove " + build + " from the Testopia trend index", e);
+			}
+		}
+	}
+	
+	/**
+	 * Trend entry of a build. Used as the column key of the trend graphs.
+	 */
+	@ExportedBean(defaultVisibility = 2)
+	public static class Entry implements Comparable<Entry> {
+		private final int buildNumber;
+		private final int passed;
+		private final int failed;
+		private final int blocked;
+		private final int notRun;
+		public Entry(int buildNumber, int passed, int failed, int blocked, int notRun) {
+			this.buildNumber = buildNumber;
+			this.passed = passed;
+			this.failed = failed;
+			this.blocked = blocked;
+			this.notRun = notRun;
+		}
+		/**
+		 * @return the buildNumber
+		 */
+		@Exported
+		public int getBuildNumber() {
+			return buildNumber;
+		}
+		/**
+		 * @return the passed
+		 */
+		@Exported
+		public int getPassed() {
+			return passed;
+		}
+		/**
+		 * @return the failed
+		 */
+		@Exported
+		public int getFailed() {
+			return failed;
+		}
+		/**
+		 * @return the blocked
+		 */
+		@Exported
+		public int getBlocked() {
+			return blocked;
+		}
+		/**
+		 * @return the notRun
+		 */
+		@Exported
+		public int getNotRun() {
+			return notRun;
+		}
+		public int compareTo(Entry o) {
+			return buildNumber < o.buildNumber ? -1 : (buildNumber == o.buildNumber ? 0 : 1);
+		}
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Entry && ((Entry) obj).buildNumber == buildNumber;
+		}
+		@Override
+		public int hashCode() {
+			return buildNumber;
+		}
+		@Override
+		public String toString() {
+			return "#" + buildNumber;
+		}
+	}
+
+}
@@ -0,0 +1,142 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2012> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.testopia;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mozilla.testopia.TestopiaAPI;
+
+/**
+ * Publishes test case updates to Testopia asynchronously. A bounded pool of 
+ * workers drains the queue of tasks, each worker using one of the Testopia 
+ * connections. When the queue is full, the thread submitting the task runs 
+ * it, which slows down the result seekers until the workers catch up.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 1.4
+ */
+public class UpdatePublisher {
+	/**
+	 * Task executed with a Testopia connection.
+	 */
+	public interface Task {
+		/**
+		 * @param api Testopia connection
+		 */
+		void run(TestopiaAPI api);
+		/**
+		 * Called when the task could not be executed.
+		 * @param cause
+		 */
+		void failed(Throwable cause);
+	}
+	/**
+	 * Testopia connections not in use.
+	 */
+	private final BlockingQueue<TestopiaAPI> connections;
+	/**
+	 * Workers.
+	 */
+	private final ThreadPoolExecutor executor;
+	/**
+	 * @param connections Testopia connections, one per worker
+	 */
+	public UpdatePublisher(List<TestopiaAPI> connections) {
+		if(connections == null || connections.isEmpty()) {
+			throw new IllegalArgumentException("At least one Testopia connection is required");
+		}
+		final int workers = connections.size();
+		this.connections = new ArrayBlockingQueue<TestopiaAPI>(workers, false, connections);
+		this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, 
+				new ArrayBlockingQueue<Runnable>(workers), 
+				new PublisherThreadFactory(), 
+				new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+	/**
+	 * @return number of workers
+	 */
+	public int getWorkers() {
+		return executor.getMaximumPoolSize();
+	}
+	/**
+	 * Hands off a task to the workers. Blocks only when the queue is full.
+	 * @param task
+	 */
+	public void publish(final Task task) {
+		executor.execute(new Runnable() {
+			public void run() {
+				final TestopiaAPI api;
+				try {
+					api = connections.take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					task.failed(e);
+					return;
+				}
+				try {
+					task.run(api);
+				} catch (RuntimeException e) {
+					task.failed(e);
+				} finally {
+					connections.offer(api);
+				}
+			}
+		});
+	}
+	/**
+	 * Waits for all the published tasks to finish. No more tasks can be 
+	 * published after calling this method.
+	 * @throws InterruptedException
+	 */
+	public void waitForCompletion() throws InterruptedException {
+		executor.shutdown();
+		try {
+			while(!executor.awaitTermination(1L, TimeUnit.SECONDS)) {
+				// keep waiting
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			throw e;
+		}
+	}
+	/**
+	 * Creates daemon threads for the publisher workers.
+	 */
+	private static class PublisherThreadFactory implements ThreadFactory {
+		private static final AtomicInteger POOL_NUMBER = new AtomicInteger(1);
+		private final AtomicInteger threadNumber = new AtomicInteger(1);
+		private final String prefix = "Testopia update publisher " + POOL_NUMBER.getAndIncrement() + "-";
+		public Thread newThread(Runnable r) {
+			final Thread t = new Thread(r, prefix + threadNumber.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
@@ -0,0 +1,586 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2012> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.testopia;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Hudson;
+import hudson.model.TaskListener;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.plugins.testopia.result.TestCaseWrapper;
+
+import org.apache.xmlrpc.XmlRpcException;
+import org.apache.xmlrpc.client.XmlRpcClientException;
+import org.apache.xmlrpc.client.XmlRpcHttpTransportException;
+
+/**
+ * <p>On-disk journal of the test case updates of a build, sent to Testopia 
+ * after the build by the {@link Flusher}. Used when the builder spools its 
+ * updates, so the build does not wait for Testopia, and no result is lost 
+ * when Testopia is slow or down.</p>
+ * 
+ * <p>The journal is written to {@link #FILE_NAME} in the build directory. 
+ * It starts with a header holding the name of the Testopia installation, 
+ * followed by fixed size records: test case ID, run ID, build ID, 
+ * environment ID and status ID. Once closed, the journal is registered in 
+ * {@link #REGISTRY_FILE_NAME} in the Jenkins home, the list of journals 
+ * waiting to be sent.</p>
+ * 
+ * <p>The number of records already sent is kept in 
+ * {@link #PROGRESS_FILE_NAME}, written after each batch. After a transient 
+ * failure (Testopia down, network error, expired session), sending stops 
+ * and resumes later from the first record not sent, so a record is sent at 
+ * least once. Setting the status of a test case run is idempotent, so 
+ * sending a record again is harmless. A record rejected by Testopia would 
+ * be rejected again, so it is written to {@link #FAILED_FILE_NAME} in the 
+ * build directory and skipped.</p>
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 1.4
+ */
+public class UpdateSpool {
+
+	private static final Logger LOGGER = Logger.getLogger("jenkins.plugins.testopia");
+	
+	/**
+	 * Name of the journal in the build directory.
+	 */
+	public static final String FILE_NAME = "testopia-spool.dat";
+	/**
+	 * Name of the progress file in the build directory.
+	 */
+	public static final String PROGRESS_FILE_NAME = "testopia-spool.pos";
+	/**
+	 * Name of the file with the records rejected by Testopia, in the build 
+	 * directory.
+	 */
+	public static final String FAILED_FILE_NAME = "testopia-spool.failed";
+	/**
+	 * Name of the list of journals waiting to be sent, in the Jenkins home.
+	 */
+	public static final String REGISTRY_FILE_NAME = "testopia-spool.list";
+	/**
+	 * Number of records sent in a batch, between two progress updates.
+	 */
+	public static final int BATCH_SIZE = 100;
+	
+	private static final int MAGIC = 0x54505350; // TPSP
+	private static final int VERSION = 1;
+	private static final int RECORD_SIZE = 5 * 4;
+	
+	/**
+	 * Guards the registry. Held only to read or rewrite it, never while 
+	 * sending.
+	 */
+	private static final Object LOCK = new Object();
+	/**
+	 * Journals being sent, so a journal is sent by a single thread.
+	 */
+	private static final Set<String> CLAIMED = Collections.synchronizedSet(new HashSet<String>());
+	
+	private final File file;
+	private final File registry;
+	private final FileOutputStream output;
+	private final DataOutputStream out;
+	private int records = 0;
+	private boolean closed = false;
+	
+	/**
+	 * Creates the journal of a build.
+	 * @param buildDir build directory
+	 * @param installationName name of the Testopia installation
+	 * @throws IOException
+	 */
+	public UpdateSpool(File buildDir, String installationName) throws IOException {
+		this(buildDir, installationName, getRegistryFile());
+	}
+	
+	/**
+	 * @param buildDir build directory
+	 * @param installationName name of the Testopia installation
+	 * @param registry list of journals waiting to be sent
+	 * @throws IOException
+	 */
+	UpdateSpool(File buildDir, String installationName, File registry) throws IOException {
+		this.file = new File(buildDir, FILE_NAME);
+		this.registry = registry;
+		this.output = new FileOutputStream(file);
+		this.out = new DataOutputStream(output);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeUTF(installationName);
+		out.flush();
+	}
+	
+	/**
+	 * @return the journal file
+	 */
+	public File getFile() {
+		return file;
+	}
+	
+	/**
+	 * @return number of updates written to the journal
+	 */
+	public synchronized int getRecords() {
+		return records;
+	}
+	
+	/**
+	 * Appends a batch of updates to the journal, and syncs it to disk.
+	 * @param batch test case updates
+	 * @throws IOException
+	 */
+	public synchronized void append(List<TestCaseWrapper> batch) throws IOException {
+		for(TestCaseWrapper tc : batch) {
+			out.writeInt(tc.getId());
+			out.writeInt(tc.getRunId());
+			out.writeInt(tc.getBuildId());
+			out.writeInt(tc.getEnvId());
+			out.writeInt(tc.getStatusId());
+		}
+		out.flush();
+		output.getFD().sync();
+		records += batch.size();
+	}
+	
+	/**
+	 * Closes the journal and registers it to be sent by the {@link Flusher}. 
+	 * An empty journal is deleted instead. Closing a journal again has no 
+	 * effect.
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		if(closed) {
+			return;
+		}
+		closed = true;
+		out.close();
+		if(records == 0) {
+			file.delete();
+			return;
+		}
+		synchronized(LOCK) {
+			final Set<String> journals = readRegistry(registry);
+			journals.add(file.getAbsolutePath());
+			writeRegistry(registry, journals);
+		}
+	}
+	
+	/**
+	 * Sends the pending records of all the registered journals to Testopia. 
+	 * A journal fully sent is deleted and removed from the registry. A 
+	 * journal that fails is kept, and sent again on the next call.
+	 * @param listener
+	 */
+	public static void drainAll(TaskListener listener) {
+		drainAll(getRegistryFile(), new Sender.Factory(), listener);
+	}
+	
+	/**
+	 * @param registry list of journals waiting to be sent
+	 * @param senders gives the sender of each journal
+	 * @param listener
+	 */
+	static void drainAll(File registry, Sender.Factory senders, TaskListener listener) {
+		final Set<String> journals;
+		synchronized(LOCK) {
+			try {
+				journals = readRegistry(registry);
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Failed to read the Testopia spool registry", e);
+				return;
+			}
+		}
+		final Set<String> done = new HashSet<String>();
+		for(String path : journals) {
+			final File journal = new File(path);
+			if(!journal.exists()) {
+				done.add(path); // build deleted
+				continue;
+			}
+			if(!CLAIMED.add(path)) {
+				continue; // being sent by another thread
+			}
+			try {
+				if(drain(journal, senders, listener)) {
+					done.add(path);
+				}
+			} catch (IOException e) {
+				listener.getLogger().println("Failed to send Testopia spool " + journal + ": " + e.getMessage());
+			} catch (RuntimeException e) {
+				listener.getLogger().println("Failed to send Testopia spool " + journal + ": " + e.getMessage());
+			} finally {
+				CLAIMED.remove(path);
+			}
+		}
+		if(done.isEmpty()) {
+			return;
+		}
+		synchronized(LOCK) {
+			try {
+				// journals registered while sending are kept
+				final Set<String> pending = readRegistry(registry);
+				pending.removeAll(done);
+				writeRegistry(registry, pending);
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Failed to write the Testopia spool registry", e);
+			}
+		}
+	}
+	
+	/**
+	 * Sends the pending records of a journal to Testopia, in batches.
+	 * @param journal journal file
+	 * @param senders gives the sender of the journal
+	 * @param listener
+	 * @return <code>true</code> if all the records were sent and the journal deleted
+	 * @throws IOException
+	 */
+	static boolean drain(File journal, Sender.Factory senders, TaskListener listener) throws IOException {
+		final File progressFile = new File(journal.getParentFile(), PROGRESS_FILE_NAME);
+		final int sent = readProgress(progressFile);
+		final Records records = read(journal, sent);
+		if(records.size() > 0) {
+			final Sender sender = senders.create(records.getInstallationName());
+			if(sender == null) {
+				listener.getLogger().println("Testopia installation " + records.getInstallationName() + " not found, keeping spool " + journal);
+				return false;
+			}
+			int done = sent;
+			for(int from = 0; from < records.size(); from += BATCH_SIZE) {
+				final List<TestCaseWrapper> batch = records.get(from, Math.min(from + BATCH_SIZE, records.size()));
+				final List<RuntimeException> failures;
+				try {
+					failures = sender.send(batch);
+				} catch (RuntimeException e) {
+					writeProgress(progressFile, done);
+					listener.getLogger().println("Failed to send Testopia spool " + journal + ", " + (done - sent) + 
+							" test case updates sent: " + e.getMessage());
+					return false;
+				}
+				for(int i = 0; i < batch.size(); i++) {
+					final RuntimeException failure = failures.get(i);
+					if(failure == null) {
+						continue;
+					}
+					if(isTransient(failure)) {
+						// resent from this record, the updates after it are idempotent
+						writeProgress(progressFile, done + i);
+						listener.getLogger().println("Failed to send Testopia spool " + journal + ", " + (done + i - sent) + 
+								" test case updates sent: " + failure.getMessage());
+						return false;
+					}
+					listener.getLogger().println("Testopia rejected an update from spool " + journal + ": " + failure.getMessage());
+					writeFailed(new File(journal.getParentFile(), FAILED_FILE_NAME), batch.get(i), failure);
+				}
+				done += batch.size();
+				writeProgress(progressFile, done);
+			}
+			listener.getLogger().println("Sent " + (done - sent) + " test case updates to Testopia from spool " + journal);
+		}
+		journal.delete();
+		progressFile.delete();
+		return true;
+	}
+	
+	/**
+	 * A failure is transient when sending the update again later may 
+	 * succeed: Testopia down or overloaded, network error, open circuit or 
+	 * expired session. A fault returned by Testopia for the update itself is 
+	 * permanent.
+	 * @param failure failure of an update
+	 * @return <code>true</code> if the failure is transient
+	 */
+	static boolean isTransient(Throwable failure) {
+		for(Throwable cause = failure; cause != null; cause = cause.getCause()) {
+			if(cause instanceof XmlRpcException) {
+				final XmlRpcException e = (XmlRpcException) cause;
+				return TestopiaRetryPolicy.isTransient(e) || 
+						e instanceof XmlRpcClientException || 
+						e instanceof XmlRpcHttpTransportException || 
+						TestopiaSession.isAuthenticationFailure(e);
+			}
+			if(cause instanceof IOException) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Reads the records of a journal, from the given record on. A record 
+	 * cut short by a crash is ignored.
+	 * @param journal journal file
+	 * @param from number of records to skip
+	 * @return records
+	 * @throws IOException
+	 */
+	static Records read(File journal, int from) throws IOException {
+		final RandomAccessFile in = new RandomAccessFile(journal, "r");
+		try {
+			if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Not a Testopia spool: " + journal);
+			}
+			final String installationName = in.readUTF();
+			final long first = in.getFilePointer() + (long) from * RECORD_SIZE;
+			final int count = (int) (Math.max(0L, in.length() - first) / RECORD_SIZE);
+			final byte[] buffer = new byte[count * RECORD_SIZE];
+			in.seek(Math.min(first, in.length()));
+			in.readFully(buffer);
+			final DataInputStream records = new DataInputStream(new ByteArrayInputStream(buffer));
+			final int[] data = new int[count * 5];
+			for(int i = 0; i < data.length; i++) {
+				data[i] = records.readInt();
+			}
+			return new Records(installationName, data);
+		} finally {
+			in.close();
+		}
+	}
+	
+	static int readProgress(File progressFile) throws IOException {
+		if(!progressFile.exists()) {
+			return 0;
+		}
+		final DataInputStream in = new DataInputStream(new FileInputStream(progressFile));
+		try {
+			return in.readInt();
+		} finally {
+			in.close();
+		}
+	}
+	
+	static void writeProgress(File progressFile, int sent) throws IOException {
+		final File tmp = new File(progressFile.getParentFile(), progressFile.getName() + ".tmp");
+		final FileOutputStream output = new FileOutputStream(tmp);
+		final DataOutputStream out = new DataOutputStream(output);
+		try {
+			out.writeInt(sent);
+			out.flush();
+			output.getFD().sync();
+		} finally {
+			out.close();
+		}
+		replace(tmp, progressFile);
+	}
+	
+	private static void writeFailed(File failedFile, TestCaseWrapper tc, RuntimeException failure) throws IOException {
+		final PrintWriter writer = new PrintWriter(new FileWriter(failedFile, true));
+		try {
+			writer.println("case_id=" + tc.getId() + " run_id=" + tc.getRunId() + " build_id=" + tc.getBuildId() + 
+					" env_id=" + tc.getEnvId() + " status_id=" + tc.getStatusId() + ": " + failure.getMessage());
+		} finally {
+			writer.close();
+		}
+		if(writer.checkError()) {
+			throw new IOException("Failed to write Testopia spool failures " + failedFile);
+		}
+	}
+	
+	private static File getRegistryFile() {
+		return new File(Hudson.getInstance().getRootDir(), REGISTRY_FILE_NAME);
+	}
+	
+	static Set<String> readRegistry(File registry) throws IOException {
+		final Set<String> journals = new LinkedHashSet<String>();
+		if(registry.exists()) {
+			final BufferedReader reader = new BufferedReader(new FileReader(registry));
+			try {
+				String line;
+				while((line = reader.readLine()) != null) {
+					if(line.trim().length() > 0) {
+						journals.add(line.trim());
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		return journals;
+	}
+	
+	private static void writeRegistry(File registry, Set<String> journals) throws IOException {
+		if(journals.isEmpty()) {
+			registry.delete();
+			return;
+		}
+		// written aside and renamed, so a crash never leaves a partial registry
+		final File tmp = new File(registry.getParentFile(), registry.getName() + ".tmp");
+		final FileOutputStream output = new FileOutputStream(tmp);
+		final PrintWriter writer = new PrintWriter(output);
+		try {
+			for(String journal : new ArrayList<String>(journals)) {
+				writer.println(journal);
+			}
+			writer.flush();
+			output.getFD().sync();
+		} finally {
+			writer.close();
+		}
+		if(writer.checkError()) {
+			tmp.delete();
+			throw new IOException("Failed to write Testopia spool registry " + registry);
+		}
+		replace(tmp, registry);
+	}
+	
+	private static void replace(File tmp, File file) throws IOException {
+		if(!tmp.renameTo(file)) {
+			// renaming over an existing file fails on some platforms
+			file.delete();
+			if(!tmp.renameTo(file)) {
+				throw new IOException("Failed to write " + file);
+			}
+		}
+	}
+	
+	/**
+	 * Records read from a journal.
+	 */
+	static final class Records {
+		
+		private final String installationName;
+		private final int[] data;
+		
+		Records(String installationName, int[] data) {
+			this.installationName = installationName;
+			this.data = data;
+		}
+		
+		/**
+		 * @return name of the Testopia installation
+		 */
+		public String getInstallationName() {
+			return installationName;
+		}
+		
+		/**
+		 * @return number of records
+		 */
+		public int size() {
+			return data.length / 5;
+		}
+		
+		/**
+		 * @param from first record, inclusive
+		 * @param to last record, exclusive
+		 * @return the updates of the records
+		 */
+		public List<TestCaseWrapper> get(int from, int to) {
+			final List<TestCaseWrapper> updates = new ArrayList<TestCaseWrapper>(to - from);
+			for(int i = from * 5; i < to * 5; i += 5) {
+				final TestCaseWrapper tc = new TestCaseWrapper();
+				tc.setId(data[i]);
+				tc.setRunId(data[i + 1]);
+				tc.setBuildId(data[i + 2]);
+				tc.setEnvId(data[i + 3]);
+				tc.setStatusId(data[i + 4]);
+				updates.add(tc);
+			}
+			return updates;
+		}
+		
+	}
+	
+	/**
+	 * Sends batches of updates to Testopia.
+	 */
+	interface Sender {
+		
+		/**
+		 * @param batch test case updates
+		 * @return the failure of each update, in the order of the batch, 
+		 * <code>null</code> for the updates that succeeded
+		 * @throws RuntimeException if the whole batch fails
+		 */
+		List<RuntimeException> send(List<TestCaseWrapper> batch);
+		
+		/**
+		 * Gives the sender of a Testopia installation, logged in through 
+		 * the pool of the installation.
+		 */
+		class Factory {
+			/**
+			 * @param installationName name of the Testopia installation
+			 * @return sender, or <code>null</code> if the installation is not found
+			 * @throws IOException
+			 */
+			Sender create(String installationName) throws IOException {
+				final TestopiaInstallation installation = TestopiaBuilder.DESCRIPTOR.getInstallationByName(installationName);
+				if(installation == null) {
+					return null;
+				}
+				final TestopiaConnection connection = TestopiaConnectionPool.get(installation).newConnection();
+				connection.login(installation.getUsername(), installation.getPassword());
+				return new Sender() {
+					public List<RuntimeException> send(List<TestCaseWrapper> batch) {
+						return connection.update(batch);
+					}
+				};
+			}
+		}
+		
+	}
+	
+	/**
+	 * Periodically sends the registered journals to Testopia.
+	 */
+	@Extension
+	public static class Flusher extends AsyncPeriodicWork {
+		public Flusher() {
+			super("Testopia spool flusher");
+		}
+		@Override
+		public long getRecurrencePeriod() {
+			return MIN;
+		}
+		@Override
+		protected void execute(TaskListener listener) throws IOException, InterruptedException {
+			drainAll(listener);
+		}
+	}
+	
+}
@@ -176,42 +176,12 @@ public class Utils {
 			return "";
 		}
 
-	}
-	/**
-	 * @param report
-	 * @param previousReport
-	 * @return
-	 */
-	public static String createReportSummaryDetails(Report report,
-			Report previousReport) {
-		final StringBuilder builder = new StringBuilder();
-
-		builder.append(Messages.Testopia_Utils_Summary());
-		builder.append("<table border=\"1\">\n");
-		builder.append("<tr><th>");
-		builder.append("Test Case ID");
-		builder.append("</th><th>");
-		builder.append("Status");
-		builder.append("</th></tr>\n");
-		
-        for(TestCaseWrapper tc: report.getTestCases() )
-        {
-        	builder.append("<tr>\n");
-        	
-        	builder.append("<td>"+tc.getId()+"</td>");
-    		builder.append("<td>"+Utils.getExecutionStatusTextColored(tc.getStatusId())+"</td>\n");
-        	
-        	builder.append("</tr>\n");
-        }
-        
-        builder.append("</table>");
-        return builder.toString();
 	}
 	/**
 	 * @param statusId
 	 * @return
 	 */
-	private static String getExecutionStatusTextColored(Integer statusId) {
+	public static String getExecutionStatusTextColored(Integer statusId) {
 		Status executionStatus = Status.get((statusId != null ? statusId
 				: Status.IDLE.getValue()));
 		String executionStatusTextColored = "Undefined";
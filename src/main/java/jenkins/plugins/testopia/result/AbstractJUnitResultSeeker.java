@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2012> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.testopia.result;
+
+import hudson.Launcher;
+import hudson.model.BuildListener;
+import hudson.model.AbstractBuild;
+import hudson.tasks.junit.JUnitParser;
+import hudson.tasks.junit.TestResult;
+
+import java.io.IOException;
+
+import jenkins.plugins.testopia.TestopiaSite;
+
+/**
+ * <p>Base class for JUnit result seekers. The JUnit reports are parsed once 
+ * and the parsed results are then matched against the automated test cases, 
+ * so that several matching strategies can share the same parse.</p>
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 1.4
+ */
+public abstract class AbstractJUnitResultSeeker extends ResultSeeker {
+
+	private static final long serialVersionUID = -2384612095532619823L;
+
+	/**
+	 * @param includePattern Include pattern used when looking for results
+	 */
+	public AbstractJUnitResultSeeker(String includePattern) {
+		super(includePattern);
+	}
+
+	/* (non-Javadoc)
+	 * @see jenkins.plugins.testopia.result.ResultSeeker#seek(jenkins.plugins.testopia.result.AliasIndex, hudson.model.AbstractBuild, hudson.Launcher, hudson.model.BuildListener, jenkins.plugins.testopia.TestopiaSite)
+	 */
+	@Override
+	public void seek(AliasIndex automatedTestCases, AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener, TestopiaSite testopia) throws ResultSeekerException {
+		try {
+			final TestResult testResult = this.parse(build, launcher, listener);
+			this.match(testResult, automatedTestCases, build, listener, testopia);
+		} catch (IOException e) {
+			throw new ResultSeekerException(e);
+		} catch (InterruptedException e) {
+			throw new ResultSeekerException(e);
+		}
+	}
+
+	/**
+	 * Parses the JUnit reports that match the include pattern.
+	 * 
+	 * @param build
+	 * @param launcher
+	 * @param listener
+	 * @return parsed JUnit results
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	protected TestResult parse(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) throws IOException, InterruptedException {
+		final JUnitParser parser = new JUnitParser(false);
+		return parser.parse(this.includePattern, build, launcher, listener);
+	}
+
+	/**
+	 * Matches parsed JUnit results against the automated test cases, and 
+	 * updates the test cases found in Testopia.
+	 * 
+	 * @param testResult parsed JUnit results
+	 * @param automatedTestCases automated test cases
+	 * @param build
+	 * @param listener
+	 * @param testopia
+	 */
+	public abstract void match(TestResult testResult, AliasIndex automatedTestCases, AbstractBuild<?, ?> build, BuildListener listener, TestopiaSite testopia);
+
+}
@@ -23,9 +23,29 @@
  */
 package jenkins.plugins.testopia.result;
 
-import com.tupilabs.testng.parser.TestNGParser;
+import hudson.FilePath;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.mozilla.testopia.model.Status;
 
 /**
+ * <p>Base class for TestNG result seekers.</p>
+ * 
+ * <p>The TestNG XML files are read with a streaming {@link TestNGResultReader} 
+ * in the workspace, and matched there against the aliases of the automated 
+ * test cases. Only a map of alias and TestNG status is sent back to the 
+ * master.</p>
+ * 
  * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
  * @since 1.3
  */
@@ -37,12 +57,10 @@ public abstract class AbstractTestNGResultSeeker extends ResultSeeker {
 	public static final String FAIL = "FAIL";
 	public static final String SKIP = "SKIP";
 	
-	protected final TestNGParser parser = new TestNGParser();
-	
 	private boolean markSkippedTestAsBlocked = false;
 	
-	public AbstractTestNGResultSeeker(String includePattern, boolean markSkippedTestAsBlocked) {
-		super(includePattern);
+	public AbstractTestNGResultSeeker(String includePattern, boolean markSkippedTestAsBlocked, Integer parallelism) {
+		super(includePattern, parallelism);
 		this.markSkippedTestAsBlocked = markSkippedTestAsBlocked;
 	}
 
@@ -53,4 +71,102 @@ public abstract class AbstractTestNGResultSeeker extends ResultSeeker {
 	public boolean isMarkSkippedTestAsBlocked() {
 		return markSkippedTestAsBlocked;
 	}
+	
+	/**
+	 * Creates the handler that collects the TestNG statuses of a file. 
+	 * Called in the workspace, once per file.
+	 * @param statuses statuses to be filled
+	 * @return handler
+	 */
+	protected abstract TestNGResultReader.Handler createHandler(TestNGStatuses statuses);
+	
+	/**
+	 * Reads the TestNG XML files that match the include pattern, keeping 
+	 * only the statuses of the given aliases. The files are read in 
+	 * parallel and their statuses merged in the order of the files.
+	 * @param build Jenkins build
+	 * @param listener Jenkins build listener
+	 * @param aliases aliases of the automated test cases
+	 * @return map of alias and TestNG status, in the order they were found
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	protected Map<String, String> readStatuses(AbstractBuild<?, ?> build, final BuildListener listener, Set<String> aliases) throws IOException, InterruptedException {
+		final Set<String> remoteAliases = new HashSet<String>(aliases);
+		return build.getWorkspace().act(new FilePath.FileCallable<Map<String, String>>() {
+			private static final long serialVersionUID = 1L;
+
+			public Map<String, String> invoke(File workspace, VirtualChannel channel)
+					throws IOException, InterruptedException {
+				final String[] xmls = AbstractTestNGResultSeeker.this.scan(workspace, includePattern, listener);
+				final List<TestNGStatuses> fileStatuses = parse(workspace, xmls, new FileParser<TestNGStatuses>() {
+					public TestNGStatuses parse(File file) throws IOException {
+						final TestNGStatuses statuses = new TestNGStatuses(remoteAliases);
+						new TestNGResultReader().read(file, createHandler(statuses));
+						return statuses;
+					}
+				});
+				final TestNGStatuses statuses = new TestNGStatuses(remoteAliases);
+				for(TestNGStatuses s : fileStatuses) {
+					for(Map.Entry<String, String> entry : s.entrySet()) {
+						statuses.merge(entry.getKey(), entry.getValue());
+					}
+				}
+				return new LinkedHashMap<String, String>(statuses);
+			}
+		});
+	}
+	
+	/**
+	 * Map of alias and TestNG status. Names that are not aliases of automated 
+	 * test cases are ignored.
+	 */
+	protected static class TestNGStatuses extends LinkedHashMap<String, String> {
+		private static final long serialVersionUID = 1L;
+		private final transient Set<String> aliases;
+		public TestNGStatuses(Set<String> aliases) {
+			this.aliases = aliases;
+		}
+		/**
+		 * Merges a TestNG status. The first failed or skipped status found 
+		 * for a name wins, otherwise the name is passed.
+		 * @param name
+		 * @param status TestNG status
+		 */
+		public void merge(String name, String status) {
+			if(name == null || !aliases.contains(name)) {
+				return;
+			}
+			final String current = this.get(name);
+			if(current == null || current.equals(PASS)) {
+				this.put(name, FAIL.equals(status) || SKIP.equals(status) ? status : PASS);
+			}
+		}
+	}
+	
+	/**
+	 * By default this method returns Passed. 
+	 * 
+	 * <p>
+	 * If the status is failed, then it returns Failed.
+	 * 
+	 * <p>
+	 * If the status is skipped, and {{@link #isMarkSkippedTestAsBlocked()} 
+	 * is true, then it returns Blocked. Otherwise it returns Idle.
+	 * 
+	 * @param status TestNG status
+	 * @return Testopia status
+	 */
+	protected Status getExecutionStatus(String status) {
+		if(FAIL.equals(status)) {
+			return Status.FAILED; 
+		} else if(SKIP.equals(status)) {
+			if(this.isMarkSkippedTestAsBlocked()) { 
+				return Status.BLOCKED;
+			} else {
+				return Status.IDLE;
+			}
+		}
+		return Status.PASSED;
+	}
 }
@@ -0,0 +1,99 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2012> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.testopia.result;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of automated test cases by alias. It is built once per build and 
+ * shared by the result seekers, so that each test result is matched with a 
+ * hash lookup instead of a scan of all the automated test cases. An alias 
+ * may be shared by several test cases.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 1.4
+ */
+public class AliasIndex {
+	/**
+	 * Automated test cases.
+	 */
+	private final TestCaseWrapper[] testCases;
+	/**
+	 * Test cases by alias.
+	 */
+	private final Map<String, List<TestCaseWrapper>> testCasesByAlias;
+	/**
+	 * @param testCases automated test cases
+	 */
+	public AliasIndex(TestCaseWrapper[] testCases) {
+		this.testCases = testCases != null ? testCases : new TestCaseWrapper[0];
+		this.testCasesByAlias = new HashMap<String, List<TestCaseWrapper>>(this.testCases.length * 2);
+		for(TestCaseWrapper testCase : this.testCases) {
+			if(testCase == null || testCase.getAlias() == null) {
+				continue;
+			}
+			List<TestCaseWrapper> list = testCasesByAlias.get(testCase.getAlias());
+			if(list == null) {
+				list = new LinkedList<TestCaseWrapper>();
+				testCasesByAlias.put(testCase.getAlias(), list);
+			}
+			list.add(testCase);
+		}
+	}
+	/**
+	 * @param alias
+	 * @return the test cases with the given alias, never <code>null</code>
+	 */
+	public List<TestCaseWrapper> get(String alias) {
+		final List<TestCaseWrapper> list = alias != null ? testCasesByAlias.get(alias) : null;
+		if(list == null) {
+			return Collections.emptyList();
+		}
+		return list;
+	}
+	/**
+	 * @param alias
+	 * @return <code>true</code> if there is a test case with the given alias
+	 */
+	public boolean contains(String alias) {
+		return alias != null && testCasesByAlias.containsKey(alias);
+	}
+	/**
+	 * @return the aliases of the automated test cases
+	 */
+	public Set<String> getAliases() {
+		return Collections.unmodifiableSet(testCasesByAlias.keySet());
+	}
+	/**
+	 * @return the automated test cases
+	 */
+	public TestCaseWrapper[] getTestCases() {
+		return testCases;
+	}
+}
@@ -26,18 +26,12 @@ package jenkins.plugins.testopia.result;
 import hudson.Extension;
 import hudson.Launcher;
 import hudson.model.BuildListener;
-import hudson.model.Result;
 import hudson.model.AbstractBuild;
-import hudson.tasks.junit.JUnitParser;
 import hudson.tasks.junit.SuiteResult;
 import hudson.tasks.junit.TestResult;
 import hudson.tasks.junit.CaseResult;
 
-import java.io.IOException;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import jenkins.plugins.testopia.TestopiaSite;
@@ -55,7 +49,7 @@ import org.mozilla.testopia.model.Status;
  * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
  * @since 1.3
  */
-public class JUnitCaseClassNameResultSeeker extends ResultSeeker {
+public class JUnitCaseClassNameResultSeeker extends AbstractJUnitResultSeeker {
 
 	private static final long serialVersionUID = -7504474094868139409L;
 
@@ -81,45 +75,44 @@ public class JUnitCaseClassNameResultSeeker extends ResultSeeker {
 	}
 
 	@Override
-	public void seek(TestCaseWrapper[] automatedTestCases, AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener, TestopiaSite testopia) throws ResultSeekerException {
-		listener.getLogger().println( Messages.Testopia_JUnit_LookingForTestClasses() );
-		try {
-			final JUnitParser parser = new JUnitParser(false);
-			final TestResult testResult = parser.parse(this.includePattern, build, launcher, listener);
-			
-			for(final SuiteResult suiteResult : testResult.getSuites()) {
-				
-				final List<CaseResult> caseResults = this.filter(suiteResult.getCases()); 
-				
-				// We need this map because a class has many case results, so we create a map by class name
-				final Map<String, TestCaseWrapper> classNameTestCase = new HashMap<String, TestCaseWrapper>();
-				
-				for (CaseResult caseResult : caseResults) {
-					for (TestCaseWrapper automatedTestCase : automatedTestCases) {
-						if (!caseResult.isSkipped() && caseResult.getClassName().equals(automatedTestCase.getAlias())) {
-							final Status status = this.getStatus(caseResult);
-							automatedTestCase.setStatusId(status.getValue());
-							classNameTestCase.put(Integer.valueOf(automatedTestCase.getId())+"#"+automatedTestCase.getAlias(), automatedTestCase);
-						}
-					}
-				}
-				
-				// Here we update testopia with our findings
-				for(Map.Entry<String, TestCaseWrapper> entry : classNameTestCase.entrySet()) {
-					try {
-						//listener.getLogger().println( Messages.Testopia_ResultSeeker_UpdateAutomatedTestCases() );
-						testopia.updateTestCase(entry.getValue());
-					} catch (RuntimeException e) {
-						build.setResult(Result.UNSTABLE);
-						e.printStackTrace(listener.getLogger());
-					}
-				}
+	public void seek(AliasIndex automatedTestCases, AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener, TestopiaSite testopia) throws ResultSeekerException {
+		listener.getLogger().println( Messages.Testopia_JUnit_LookingForTestClasses() ); // i18n
+		super.seek(automatedTestCases, build, launcher, listener, testopia);
+	}
+
+	@Override
+	public void match(TestResult testResult, AliasIndex automatedTestCases, AbstractBuild<?, ?> build, BuildListener listener, TestopiaSite testopia) {
+		// A class has many case results, so we reduce them to one result per 
+		// class name, across all the suites. Any failure wins.
+		final Map<String, CaseResult> classResults = new LinkedHashMap<String, CaseResult>();
+		for(final SuiteResult suiteResult : testResult.getSuites()) {
+			for(CaseResult caseResult : suiteResult.getCases()) {
+				reduce(classResults, caseResult);
 			}
-			
-		} catch (IOException e) {
-			throw new ResultSeekerException(e);
-		} catch (InterruptedException e) {
-			throw new ResultSeekerException(e);
+		}
+		
+		// Here we update testopia with our findings
+		for(Map.Entry<String, CaseResult> entry : classResults.entrySet()) {
+			final Status status = this.getStatus(entry.getValue());
+			for(TestCaseWrapper automatedTestCase : automatedTestCases.get(entry.getKey())) {
+				this.updateTestCase(automatedTestCase, status, build, listener, testopia);
+			}
+		}
+	}
+
+	/**
+	 * Reduces a case result into the result of its class, in constant time. 
+	 * Skipped case results are ignored, and a failed one is never replaced.
+	 * @param classResults result of each class name
+	 * @param caseResult
+	 */
+	static void reduce(Map<String, CaseResult> classResults, CaseResult caseResult) {
+		if(caseResult.isSkipped()) {
+			return;
+		}
+		final CaseResult previous = classResults.get(caseResult.getClassName());
+		if(previous == null || previous.getFailCount() <= 0) { // didn't fail
+			classResults.put(caseResult.getClassName(), caseResult);
 		}
 	}
 
@@ -136,55 +129,4 @@ public class JUnitCaseClassNameResultSeeker extends ResultSeeker {
 		return Status.IDLE;
 	}
 
-	/**
-	 * @param cases
-	 * @return
-	 */
-	private List<CaseResult> filter(List<CaseResult> cases) {
-		final List<CaseResult> filtered = new LinkedList<CaseResult>();
-		
-		for(CaseResult caseResult : cases) {
-			final CaseResult c = this.find(filtered, caseResult);
-			if(c != null) {
-				if(c.getFailCount()<=0) { // didn't fail
-					this.remove(filtered, c);
-					filtered.add(caseResult);
-				}
-			} else {
-				filtered.add(caseResult);
-			}
-		}
-		
-		return filtered;
-	}
-
-	/**
-	 * @param filtered
-	 * @param caseResult
-	 * @return
-	 */
-	private CaseResult find(List<CaseResult> filtered, CaseResult caseResult) {
-		for(CaseResult c : filtered) {
-			if(c.getClassName().equals(caseResult.getClassName())) {
-				return c;
-			}
-		}
-		return null;
-	}
-	
-	/**
-	 * @param filtered
-	 * @param caseResult
-	 * @return
-	 */
-	private void remove(List<CaseResult> filtered, CaseResult caseResult) {
-		final Iterator<CaseResult> iterator = filtered.iterator();
-		while(iterator.hasNext()) {
-			CaseResult c = iterator.next();
-			if(c.getClassName().equals(caseResult.getClassName())) {
-				iterator.remove();
-			}
-		}
-	}
-	
 }
@@ -26,14 +26,11 @@ package jenkins.plugins.testopia.result;
 import hudson.Extension;
 import hudson.Launcher;
 import hudson.model.BuildListener;
-import hudson.model.Result;
 import hudson.model.AbstractBuild;
-import hudson.tasks.junit.JUnitParser;
 import hudson.tasks.junit.SuiteResult;
 import hudson.tasks.junit.TestResult;
 import hudson.tasks.junit.CaseResult;
 
-import java.io.IOException;
 
 import jenkins.plugins.testopia.TestopiaSite;
 import jenkins.plugins.testopia.util.Messages;
@@ -50,7 +47,7 @@ import org.mozilla.testopia.model.Status;
  * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
  * @since 1.3
  */
-public class JUnitCaseNameResultSeeker extends ResultSeeker {
+public class JUnitCaseNameResultSeeker extends AbstractJUnitResultSeeker {
 
 	private static final long serialVersionUID = 2278496777245515704L;
 
@@ -76,33 +73,22 @@ public class JUnitCaseNameResultSeeker extends ResultSeeker {
 	}
 
 	@Override
-	public void seek(TestCaseWrapper[] automatedTestCases, AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener, TestopiaSite testopia) throws ResultSeekerException {
+	public void seek(AliasIndex automatedTestCases, AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener, TestopiaSite testopia) throws ResultSeekerException {
 		listener.getLogger().println( Messages.Testopia_JUnit_LookingForTestCases() ); // i18n
-		try {
-			final JUnitParser parser = new JUnitParser(false);
-			final TestResult testResult = parser.parse(this.includePattern, build, launcher, listener);
-			
-			for(SuiteResult suiteResult : testResult.getSuites()) {
-				for(CaseResult caseResult : suiteResult.getCases()) {
-					for(TestCaseWrapper automatedTestCase : automatedTestCases) {
-						if(! caseResult.isSkipped() && caseResult.getName().equals(automatedTestCase.getAlias())) {
-							Status status = this.getStatus(caseResult);
-							automatedTestCase.setStatusId(status.getValue());
-							try {
-								//listener.getLogger().println( Messages.Testopia_ResultSeeker_UpdateAutomatedTestCases() );
-								testopia.updateTestCase(automatedTestCase);
-							} catch (RuntimeException e) {
-								build.setResult(Result.UNSTABLE);
-								e.printStackTrace(listener.getLogger());
-							}
-						}
-					}
+		super.seek(automatedTestCases, build, launcher, listener, testopia);
+	}
+
+	@Override
+	public void match(TestResult testResult, AliasIndex automatedTestCases, AbstractBuild<?, ?> build, BuildListener listener, TestopiaSite testopia) {
+		for(SuiteResult suiteResult : testResult.getSuites()) {
+			for(CaseResult caseResult : suiteResult.getCases()) {
+				if(caseResult.isSkipped()) {
+					continue;
+				}
+				for(TestCaseWrapper automatedTestCase : automatedTestCases.get(caseResult.getName())) {
+					this.updateTestCase(automatedTestCase, this.getStatus(caseResult), build, listener, testopia);
 				}
 			}
-		} catch (IOException e) {
-			throw new ResultSeekerException(e);
-		} catch (InterruptedException e) {
-			throw new ResultSeekerException(e);
 		}
 	}
 
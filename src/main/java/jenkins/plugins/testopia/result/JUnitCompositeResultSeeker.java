@@ -0,0 +1,150 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2012> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.testopia.result;
+
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.model.BuildListener;
+import hudson.model.AbstractBuild;
+import hudson.tasks.junit.TestResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jenkins.plugins.testopia.TestopiaSite;
+import jenkins.plugins.testopia.util.Messages;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * <p>Seeks for test results matching JUnit suite, class, case and method names 
+ * with the key custom field. The JUnit reports are scanned and parsed once, 
+ * and each of the selected matching strategies is applied to the same parsed 
+ * results.</p>
+ * 
+ * <p>Skips JUnit Case Results that were disabled.</p>
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 1.4
+ */
+public class JUnitCompositeResultSeeker extends AbstractJUnitResultSeeker {
+
+	private static final long serialVersionUID = 6482012736440518862L;
+	
+	private final boolean suiteName;
+	private final boolean className;
+	private final boolean caseName;
+	private final boolean methodName;
+
+	/**
+	 * @param includePattern Include pattern used when looking for results
+	 * @param suiteName match JUnit suite names
+	 * @param className match JUnit class names
+	 * @param caseName match JUnit case names
+	 * @param methodName match JUnit method names
+	 */
+	@DataBoundConstructor
+	public JUnitCompositeResultSeeker(String includePattern, boolean suiteName, boolean className, boolean caseName, boolean methodName) {
+		super(includePattern);
+		this.suiteName = suiteName;
+		this.className = className;
+		this.caseName = caseName;
+		this.methodName = methodName;
+	}
+	
+	/**
+	 * @return the suiteName
+	 */
+	public boolean isSuiteName() {
+		return suiteName;
+	}
+	
+	/**
+	 * @return the className
+	 */
+	public boolean isClassName() {
+		return className;
+	}
+	
+	/**
+	 * @return the caseName
+	 */
+	public boolean isCaseName() {
+		return caseName;
+	}
+	
+	/**
+	 * @return the methodName
+	 */
+	public boolean isMethodName() {
+		return methodName;
+	}
+
+	@Extension
+	public static class DescriptorImpl extends ResultSeekerDescriptor {
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see hudson.model.Descriptor#getDisplayName()
+		 */
+		@Override
+		public String getDisplayName() {
+			return Messages.Testopia_JUnit_Composite();
+		}
+	}
+
+	@Override
+	public void seek(AliasIndex automatedTestCases, AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener, TestopiaSite testopia) throws ResultSeekerException {
+		listener.getLogger().println( Messages.Testopia_JUnit_LookingForTestResults() ); // i18n
+		super.seek(automatedTestCases, build, launcher, listener, testopia);
+	}
+
+	@Override
+	public void match(TestResult testResult, AliasIndex automatedTestCases, AbstractBuild<?, ?> build, BuildListener listener, TestopiaSite testopia) {
+		for(AbstractJUnitResultSeeker strategy : this.getStrategies()) {
+			strategy.match(testResult, automatedTestCases, build, listener, testopia);
+		}
+	}
+
+	/**
+	 * @return the selected matching strategies
+	 */
+	protected List<AbstractJUnitResultSeeker> getStrategies() {
+		final List<AbstractJUnitResultSeeker> strategies = new ArrayList<AbstractJUnitResultSeeker>();
+		if(suiteName) {
+			strategies.add(new JUnitSuiteNameResultSeeker(includePattern));
+		}
+		if(className) {
+			strategies.add(new JUnitCaseClassNameResultSeeker(includePattern));
+		}
+		if(caseName) {
+			strategies.add(new JUnitCaseNameResultSeeker(includePattern));
+		}
+		if(methodName) {
+			strategies.add(new JUnitMethodNameResultSeeker(includePattern));
+		}
+		return strategies;
+	}
+
+}
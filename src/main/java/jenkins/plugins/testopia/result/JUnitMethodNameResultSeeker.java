@@ -26,14 +26,11 @@ package jenkins.plugins.testopia.result;
 import hudson.Extension;
 import hudson.Launcher;
 import hudson.model.BuildListener;
-import hudson.model.Result;
 import hudson.model.AbstractBuild;
-import hudson.tasks.junit.JUnitParser;
 import hudson.tasks.junit.SuiteResult;
 import hudson.tasks.junit.TestResult;
 import hudson.tasks.junit.CaseResult;
 
-import java.io.IOException;
 
 import jenkins.plugins.testopia.TestopiaSite;
 import jenkins.plugins.testopia.util.Messages;
@@ -50,7 +47,7 @@ import org.mozilla.testopia.model.Status;
  * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
  * @since 1.3
  */
-public class JUnitMethodNameResultSeeker extends ResultSeeker {
+public class JUnitMethodNameResultSeeker extends AbstractJUnitResultSeeker {
 
 	private static final long serialVersionUID = -9198823056268332288L;
 
@@ -76,34 +73,23 @@ public class JUnitMethodNameResultSeeker extends ResultSeeker {
 	}
 
 	@Override
-	public void seek(TestCaseWrapper[] automatedTestCases, AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener, TestopiaSite testopia) throws ResultSeekerException {
+	public void seek(AliasIndex automatedTestCases, AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener, TestopiaSite testopia) throws ResultSeekerException {
 		listener.getLogger().println( Messages.Testopia_JUnit_LookingForTestMethods() ); // i18n
-		try {
-			final JUnitParser parser = new JUnitParser(false);
-			final TestResult testResult = parser.parse(this.includePattern, build, launcher, listener);
-			
-			for(final SuiteResult suiteResult : testResult.getSuites()) {
-				for(CaseResult caseResult : suiteResult.getCases()) {
-					final String methodName = caseResult.getClassName() + "#" + caseResult.getName();
-					for(TestCaseWrapper automatedTestCase : automatedTestCases) {
-						if(! caseResult.isSkipped() && methodName.equals(automatedTestCase.getAlias())) {
-							final Status status = this.getStatus(caseResult);
-							automatedTestCase.setStatusId(status.getValue());
-							try {
-								//listener.getLogger().println( Messages.Testopia_ResultSeeker_UpdateAutomatedTestCases() );
-								testopia.updateTestCase(automatedTestCase);
-							} catch (RuntimeException e) {
-								build.setResult(Result.UNSTABLE);
-								e.printStackTrace(listener.getLogger());
-							}
-						}
-					}
+		super.seek(automatedTestCases, build, launcher, listener, testopia);
+	}
+
+	@Override
+	public void match(TestResult testResult, AliasIndex automatedTestCases, AbstractBuild<?, ?> build, BuildListener listener, TestopiaSite testopia) {
+		for(final SuiteResult suiteResult : testResult.getSuites()) {
+			for(CaseResult caseResult : suiteResult.getCases()) {
+				if(caseResult.isSkipped()) {
+					continue;
+				}
+				final String methodName = caseResult.getClassName() + "#" + caseResult.getName();
+				for(TestCaseWrapper automatedTestCase : automatedTestCases.get(methodName)) {
+					this.updateTestCase(automatedTestCase, this.getStatus(caseResult), build, listener, testopia);
 				}
 			}
-		} catch (IOException e) {
-			throw new ResultSeekerException(e);
-		} catch (InterruptedException e) {
-			throw new ResultSeekerException(e);
 		}
 	}
 
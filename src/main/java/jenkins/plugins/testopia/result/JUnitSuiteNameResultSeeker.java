@@ -26,14 +26,11 @@ package jenkins.plugins.testopia.result;
 import hudson.Extension;
 import hudson.Launcher;
 import hudson.model.BuildListener;
-import hudson.model.Result;
 import hudson.model.AbstractBuild;
-import hudson.tasks.junit.JUnitParser;
 import hudson.tasks.junit.SuiteResult;
 import hudson.tasks.junit.TestResult;
 import hudson.tasks.junit.CaseResult;
 
-import java.io.IOException;
 import java.util.List;
 
 import jenkins.plugins.testopia.TestopiaSite;
@@ -51,7 +48,7 @@ import org.mozilla.testopia.model.Status;
  * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
  * @since 1.3
  */
-public class JUnitSuiteNameResultSeeker extends ResultSeeker {
+public class JUnitSuiteNameResultSeeker extends AbstractJUnitResultSeeker {
 
 	private static final long serialVersionUID = -969559401334833078L;
 
@@ -77,31 +74,17 @@ public class JUnitSuiteNameResultSeeker extends ResultSeeker {
 	}
 
 	@Override
-	public void seek(TestCaseWrapper[] automatedTestCases,AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener, TestopiaSite testopia) throws ResultSeekerException {
-		listener.getLogger().println( Messages.Testopia_JUnit_LookingForTestSuites() );
-		try {
-			final JUnitParser parser = new JUnitParser(false);
-			final TestResult testResult = parser.parse(this.includePattern, build, launcher, listener);
-			
-			for (SuiteResult suiteResult : testResult.getSuites()) {
-				for (TestCaseWrapper automatedTestCase : automatedTestCases) {
-					if (suiteResult.getName().equals(automatedTestCase.getAlias())) {
-						final Status status = this.getStatus(suiteResult);
-						automatedTestCase.setStatusId(status.getValue());
-						try {
-							//listener.getLogger().println( Messages.Testopia_ResultSeeker_UpdateAutomatedTestCases() );
-							testopia.updateTestCase(automatedTestCase);
-						} catch (RuntimeException e) {
-							build.setResult(Result.UNSTABLE);
-							e.printStackTrace(listener.getLogger());
-						}
-					}
-				}
+	public void seek(AliasIndex automatedTestCases, AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener, TestopiaSite testopia) throws ResultSeekerException {
+		listener.getLogger().println( Messages.Testopia_JUnit_LookingForTestSuites() ); // i18n
+		super.seek(automatedTestCases, build, launcher, listener, testopia);
+	}
+
+	@Override
+	public void match(TestResult testResult, AliasIndex automatedTestCases, AbstractBuild<?, ?> build, BuildListener listener, TestopiaSite testopia) {
+		for (SuiteResult suiteResult : testResult.getSuites()) {
+			for (TestCaseWrapper automatedTestCase : automatedTestCases.get(suiteResult.getName())) {
+				this.updateTestCase(automatedTestCase, this.getStatus(suiteResult), build, listener, testopia);
 			}
-		} catch (IOException e) {
-			throw new ResultSeekerException(e);
-		} catch (InterruptedException e) {
-			throw new ResultSeekerException(e);
 		}
 	}
 	
@@ -32,10 +32,18 @@ import hudson.model.AbstractBuild;
 import hudson.model.Descriptor;
 import hudson.model.Hudson;
 import hudson.model.Node;
+import hudson.model.Result;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -48,6 +56,7 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.DirectoryScanner;
 import org.apache.tools.ant.types.FileSet;
+import org.mozilla.testopia.model.Status;
 
 /**
  * Seeks for test results.
@@ -67,13 +76,27 @@ public abstract class ResultSeeker implements Serializable, Describable<ResultSe
 	 * Include pattern used when looking for results.
 	 */
 	protected final String includePattern;
+	/**
+	 * Maximum number of files parsed in parallel. <code>null</code> or zero 
+	 * uses one thread per processor of the node.
+	 */
+	protected final Integer parallelism;
 	/**
 	 * Creates a result seeker passing a ant-like pattern to look for results.
 	 * @param includePattern Include pattern when looking for results.
 	 */
 	public ResultSeeker(String includePattern) {
+		this(includePattern, null);
+	}
+	/**
+	 * Creates a result seeker passing a ant-like pattern to look for results.
+	 * @param includePattern Include pattern when looking for results.
+	 * @param parallelism Maximum number of files parsed in parallel.
+	 */
+	public ResultSeeker(String includePattern, Integer parallelism) {
 		super();
 		this.includePattern = includePattern;
+		this.parallelism = parallelism;
 	}
 	/**
 	 * @return the includePattern
@@ -81,6 +104,12 @@ public abstract class ResultSeeker implements Serializable, Describable<ResultSe
 	public String getIncludePattern() {
 		return includePattern;
 	}
+	/**
+	 * @return the parallelism
+	 */
+	public Integer getParallelism() {
+		return parallelism;
+	}
 	/*
 	 * (non-Javadoc)
 	 * @see hudson.model.Describable#getDescriptor()
@@ -105,13 +134,13 @@ public abstract class ResultSeeker implements Serializable, Describable<ResultSe
 	 * 
 	 * <p>For each result found, it is automatically updated in Testopia.</p>
 	 * 
-	 * @param automatedTestcases Automated test cases
+	 * @param automatedTestCases Automated test cases, indexed by alias
 	 * @param workspace Build workspace, used when looking for results using the include pattern
 	 * @param listener Build listener for logging
 	 * @param testopia Testopia site for updating test status
 	 * @throws ResultSeekerException
 	 */
-	public abstract void seek(TestCaseWrapper[] automatedTestCases, AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener, TestopiaSite testopia) throws ResultSeekerException;
+	public abstract void seek(AliasIndex automatedTestCases, AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener, TestopiaSite testopia) throws ResultSeekerException;
 	/**
 	 * Retrieves the file content encoded in Base64.
 	 * 
@@ -156,6 +185,92 @@ public abstract class ResultSeeker implements Serializable, Describable<ResultSe
 		}
 		return fileNames;
 	}
+	/**
+	 * Parses a single result file.
+	 * @param <T> parse result
+	 */
+	protected interface FileParser<T> {
+		/**
+		 * @param file result file
+		 * @return parse result
+		 * @throws IOException
+		 */
+		T parse(File file) throws IOException;
+	}
+	/**
+	 * Parses result files in parallel, using up to one thread per processor 
+	 * of the node, capped by the parallelism of this seeker. The results are 
+	 * returned in the same order of the file names, so that merging them 
+	 * is deterministic.
+	 * 
+	 * @param directory the directory of the files.
+	 * @param fileNames the file names, relative to the directory.
+	 * @param parser parser for a single file.
+	 * @return parse results, in the order of the file names.
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	protected <T> List<T> parse(final File directory, final String[] fileNames, final FileParser<T> parser) throws IOException, InterruptedException {
+		final List<T> results = new ArrayList<T>(fileNames.length);
+		int threads = Runtime.getRuntime().availableProcessors();
+		if(parallelism != null && parallelism > 0) {
+			threads = Math.min(threads, parallelism);
+		}
+		threads = Math.min(threads, fileNames.length);
+		if(threads <= 1) {
+			for(String fileName : fileNames) {
+				results.add(parser.parse(new File(directory, fileName)));
+			}
+			return results;
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			final List<Future<T>> futures = new ArrayList<Future<T>>(fileNames.length);
+			for(final String fileName : fileNames) {
+				futures.add(executor.submit(new Callable<T>() {
+					public T call() throws Exception {
+						return parser.parse(new File(directory, fileName));
+					}
+				}));
+			}
+			for(Future<T> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException e) {
+					final Throwable cause = e.getCause();
+					if(cause instanceof IOException) {
+						throw (IOException) cause;
+					} else if(cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					throw new IOException(cause);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return results;
+	}
+	/**
+	 * Sets the status of the automated test case and queues it to be sent 
+	 * to Testopia. A failed update marks the build as unstable, and does 
+	 * not stop the remaining updates.
+	 * 
+	 * @param automatedTestCase
+	 * @param status
+	 * @param build
+	 * @param listener
+	 * @param testopia
+	 */
+	protected void updateTestCase(TestCaseWrapper automatedTestCase, Status status, AbstractBuild<?, ?> build, BuildListener listener, TestopiaSite testopia) {
+		automatedTestCase.setStatusId(status.getValue());
+		try {
+			testopia.updateTestCase(automatedTestCase);
+		} catch (RuntimeException e) {
+			build.setResult(Result.UNSTABLE);
+			e.printStackTrace(listener.getLogger());
+		}
+	}
 	/* (non-Javadoc)
 	 * @see java.lang.Comparable#compareTo(java.lang.Object)
 	 */
@@ -32,8 +32,11 @@ import hudson.remoting.VirtualChannel;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import jenkins.plugins.testopia.TestopiaSite;
 import jenkins.plugins.testopia.util.Messages;
@@ -53,6 +56,9 @@ import org.tap4j.util.DirectiveValues;
  * 
  * <p>Skips TAP Streams that were skipped.</p>
  * 
+ * <p>The TAP files are parsed and matched in the workspace, and only a map 
+ * of alias and status is sent back to the master.</p>
+ * 
  * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
  * @since 0.1
  */
@@ -63,10 +69,11 @@ public class TAPFileNameResultSeeker extends ResultSeeker {
 	protected static final String TEXT_PLAIN_CONTENT_TYPE = "text/plain";
 	/**
 	 * @param includePattern
+	 * @param parallelism
 	 */
 	@DataBoundConstructor
-	public TAPFileNameResultSeeker(String includePattern) {
-		super(includePattern);
+	public TAPFileNameResultSeeker(String includePattern, Integer parallelism) {
+		super(includePattern, parallelism);
 	}
 
 	@Extension
@@ -86,45 +93,44 @@ public class TAPFileNameResultSeeker extends ResultSeeker {
 	 * @see jenkins.plugins.testopia.result.ResultSeeker#seek(org.mozilla.testopia.model.TestCase[], hudson.model.AbstractBuild, hudson.Launcher, hudson.model.BuildListener, jenkins.plugins.testopia.TestopiaSite)
 	 */
 	@Override
-	public void seek(final TestCaseWrapper[] automatedTestCases, AbstractBuild<?, ?> build, Launcher launcher, final BuildListener listener, TestopiaSite testopia) throws ResultSeekerException {
+	public void seek(final AliasIndex automatedTestCases, AbstractBuild<?, ?> build, Launcher launcher, final BuildListener listener, TestopiaSite testopia) throws ResultSeekerException {
 		listener.getLogger().println( Messages.Testopia_TAP_LookingForTAPFileName() );
+		final Set<String> aliases = new HashSet<String>(automatedTestCases.getAliases());
 		try {
-			final Map<String, TestSet> testSets = build.getWorkspace().act(new FilePath.FileCallable<Map<String, TestSet>>() {
+			final Map<String, Status> statuses = build.getWorkspace().act(new FilePath.FileCallable<Map<String, Status>>() {
 				private static final long serialVersionUID = 1L;
 
-				private Map<String, TestSet> testSets;
-				
-				public Map<String, TestSet> invoke(File workspace, VirtualChannel channel)
+				public Map<String, Status> invoke(File workspace, VirtualChannel channel)
 						throws IOException, InterruptedException {
 					final String[] tapFiles = TAPFileNameResultSeeker.this.scan(workspace, includePattern, listener);
 					
-					testSets = new HashMap<String, TestSet>(tapFiles.length);
+					final List<Status> fileStatuses = parse(workspace, tapFiles, new FileParser<Status>() {
+						public Status parse(File input) throws IOException {
+							if(!aliases.contains(getFileNameWithoutExtension(input.getName()))) {
+								return null;
+							}
+							final TapConsumer tapConsumer = TapConsumerFactory.makeTap13YamlConsumer();
+							final TestSet testSet = tapConsumer.load(input);
+							return getExecutionStatus(testSet);
+						}
+					});
 					
-					for(String tapFile : tapFiles) {
-						final File input = new File(workspace, tapFile);
-						final TapConsumer tapConsumer = TapConsumerFactory.makeTap13YamlConsumer();
-						final TestSet testSet = tapConsumer.load(input);
-						testSets.put(input.getName(), testSet);
+					final Map<String, Status> found = new LinkedHashMap<String, Status>();
+					for(int i = 0; i < tapFiles.length; i++) {
+						if(fileStatuses.get(i) != null) {
+							found.put(getFileNameWithoutExtension(new File(tapFiles[i]).getName()), fileStatuses.get(i));
+						}
 					}
 					
-					return testSets;
+					return found;
 				}
 			});
 			
-			for(String key : testSets.keySet()) {
-				for(TestCaseWrapper automatedTestCase : automatedTestCases) {
-					String value = automatedTestCase.getAlias();
-					String tapFileNameWithoutExtension = key;
-					int extensionIndex = tapFileNameWithoutExtension.lastIndexOf('.');
-					if ( extensionIndex != -1 ) {
-						tapFileNameWithoutExtension = tapFileNameWithoutExtension.substring(0, tapFileNameWithoutExtension.lastIndexOf('.'));
-					}
-					if(tapFileNameWithoutExtension.equals(value)) {
-						final Status status = this.getExecutionStatus(testSets.get(key));
-						automatedTestCase.setStatusId(status.getValue());
-						//listener.getLogger().println( Messages.Testopia_ResultSeeker_UpdateAutomatedTestCases() );
-						testopia.updateTestCase(automatedTestCase);
-					}
+			for(Map.Entry<String, Status> entry : statuses.entrySet()) {
+				for(TestCaseWrapper automatedTestCase : automatedTestCases.get(entry.getKey())) {
+					final Status status = entry.getValue();
+					//listener.getLogger().println( Messages.Testopia_ResultSeeker_UpdateAutomatedTestCases() );
+					this.updateTestCase(automatedTestCase, status, build, listener, testopia);
 				}
 			}
 		} catch (IOException e) {
@@ -134,6 +140,19 @@ public class TAPFileNameResultSeeker extends ResultSeeker {
 		}
 	}
 
+	/**
+	 * @param tapFileName TAP file name
+	 * @return TAP file name without extension
+	 */
+	protected String getFileNameWithoutExtension(String tapFileName) {
+		String tapFileNameWithoutExtension = tapFileName;
+		int extensionIndex = tapFileNameWithoutExtension.lastIndexOf('.');
+		if ( extensionIndex != -1 ) {
+			tapFileNameWithoutExtension = tapFileNameWithoutExtension.substring(0, extensionIndex);
+		}
+		return tapFileNameWithoutExtension;
+	}
+
 	/**
 	 * Gets execution status for a Test Set.
 	 * @param testSet
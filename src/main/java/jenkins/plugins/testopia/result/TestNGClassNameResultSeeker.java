@@ -24,28 +24,19 @@
 package jenkins.plugins.testopia.result;
 
 import hudson.Extension;
-import hudson.FilePath;
 import hudson.Launcher;
 import hudson.model.BuildListener;
 import hudson.model.AbstractBuild;
-import hudson.remoting.VirtualChannel;
 
-import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Map;
 
 import jenkins.plugins.testopia.TestopiaSite;
 import jenkins.plugins.testopia.util.Messages;
 
-import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.mozilla.testopia.model.Status;
 
-import com.tupilabs.testng.parser.Suite;
-import com.tupilabs.testng.parser.Test;
-import com.tupilabs.testng.parser.TestMethod;
-
 /**
  * <p>Seeks for test results matching each TestNG Class name with the key 
  * custom field.</p>
@@ -62,10 +53,11 @@ public class TestNGClassNameResultSeeker extends AbstractTestNGResultSeeker {
 	/**
 	 * @param includePattern
 	 * @param markSkippedTestAsBlocked
+	 * @param parallelism
 	 */
 	@DataBoundConstructor
-	public TestNGClassNameResultSeeker(String includePattern, boolean markSkippedTestAsBlocked) {
-		super(includePattern, markSkippedTestAsBlocked);
+	public TestNGClassNameResultSeeker(String includePattern, boolean markSkippedTestAsBlocked, Integer parallelism) {
+		super(includePattern, markSkippedTestAsBlocked, parallelism);
 	}
 	
 	@Extension
@@ -82,39 +74,15 @@ public class TestNGClassNameResultSeeker extends AbstractTestNGResultSeeker {
 	}
 
 	@Override
-	public void seek(TestCaseWrapper[] automatedTestCases, AbstractBuild<?, ?> build, Launcher launcher, final BuildListener listener, TestopiaSite testopia) throws ResultSeekerException {
+	public void seek(AliasIndex automatedTestCases, AbstractBuild<?, ?> build, Launcher launcher, final BuildListener listener, TestopiaSite testopia) throws ResultSeekerException {
 		listener.getLogger().println( Messages.Testopia_TestNG_LookingForTestClasses() );
 		try {
-			final List<Suite> suites = build.getWorkspace().act(new FilePath.FileCallable<List<Suite>>() {
-				private static final long serialVersionUID = 1L;
-
-				private List<Suite> suites = new ArrayList<Suite>();
-				
-				public List<Suite> invoke(File workspace, VirtualChannel channel)
-						throws IOException, InterruptedException {
-					final String[] xmls = TestNGClassNameResultSeeker.this.scan(workspace, includePattern, listener);
-					
-					for(String xml : xmls) {
-						final File input = new File(workspace, xml);
-						Suite suite = parser.parse(input);
-						suites.add(suite);
-					}
-					
-					return suites;
-				}
-			});
-			for(Suite suite : suites) {
-				for(Test test : suite.getTests() ) {
-					for(com.tupilabs.testng.parser.Class  clazz : test.getClasses()) {
-						for(TestCaseWrapper automatedTestCase : automatedTestCases) {
-							if(clazz.getName().equals(automatedTestCase.getAlias())) {
-								Status status = this.getExecutionStatus(clazz);
-								automatedTestCase.setStatusId(status.getValue());
-								//listener.getLogger().println( Messages.Testopia_ResultSeeker_UpdateAutomatedTestCases() );
-								testopia.updateTestCase(automatedTestCase);
-							}
-						}
-					}
+			final Map<String, String> statuses = this.readStatuses(build, listener, automatedTestCases.getAliases());
+			for(Map.Entry<String, String> entry : statuses.entrySet()) {
+				for(TestCaseWrapper automatedTestCase : automatedTestCases.get(entry.getKey())) {
+					Status status = this.getExecutionStatus(entry.getValue());
+					//listener.getLogger().println( Messages.Testopia_ResultSeeker_UpdateAutomatedTestCases() );
+					this.updateTestCase(automatedTestCase, status, build, listener, testopia);
 				}
 			}
 		} catch (IOException e) {
@@ -124,34 +92,18 @@ public class TestNGClassNameResultSeeker extends AbstractTestNGResultSeeker {
 		} 
 	}
 
-	/**
-	 * By default this method returns Passed. 
-	 * 
-	 * <p>
-	 * If there is any failed method, then it returns Failed.
-	 * 
-	 * <p>
-	 * In there is any skipped method, and {{@link #isMarkSkippedTestAsBlocked()} 
-	 * is true, then it returns Blocked.
-	 * 
-	 * @param suite
-	 * @return
-	 */
-	private Status getExecutionStatus(com.tupilabs.testng.parser.Class clazz) {
-		for( TestMethod method : clazz.getTestMethods() ) {
-			if ( StringUtils.isNotBlank(method.getStatus()) ) {
-				if(method.getStatus().equals(FAIL)) {
-					return Status.FAILED; 
-				} else if(method.getStatus().equals(SKIP)) {
-					if(this.isMarkSkippedTestAsBlocked()) { 
-						return Status.BLOCKED;
-					} else {
-						return Status.IDLE;
-					}
-				}
+	@Override
+	protected TestNGResultReader.Handler createHandler(final TestNGStatuses statuses) {
+		return new TestNGResultReader.Handler() {
+			@Override
+			public void startClass(String suite, String className) {
+				statuses.merge(className, PASS);
 			}
-		}
-		return Status.PASSED;
+			@Override
+			public void testMethod(String suite, String className, String methodName, String status) {
+				statuses.merge(className, status);
+			}
+		};
 	}
 
 }
@@ -0,0 +1,145 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2012> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.testopia.result;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming reader for TestNG XML results. Instead of building the whole 
+ * tree of suites, tests, classes and methods, it emits each test method 
+ * status to a {@link Handler} as the file is read. Reporter output and 
+ * stack traces are skipped, so the memory used does not depend on the 
+ * size of the report.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 1.4
+ */
+public class TestNGResultReader {
+	
+	private static final String SUITE = "suite";
+	private static final String CLASS = "class";
+	private static final String TEST_METHOD = "test-method";
+	private static final String NAME = "name";
+	private static final String STATUS = "status";
+	
+	/**
+	 * Receives the elements found while reading a TestNG XML.
+	 */
+	public static abstract class Handler {
+		/**
+		 * @param suite suite name
+		 */
+		public void startSuite(String suite) {
+		}
+		/**
+		 * @param suite suite name
+		 * @param className class name
+		 */
+		public void startClass(String suite, String className) {
+		}
+		/**
+		 * @param suite suite name
+		 * @param className class name
+		 * @param methodName method name
+		 * @param status TestNG status (PASS, FAIL or SKIP)
+		 */
+		public void testMethod(String suite, String className, String methodName, String status) {
+		}
+	}
+	
+	private final XMLInputFactory factory;
+	
+	public TestNGResultReader() {
+		factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+	}
+	
+	/**
+	 * Reads a TestNG XML file.
+	 * @param file TestNG XML
+	 * @param handler handler for the elements found
+	 * @throws IOException
+	 */
+	public void read(File file, Handler handler) throws IOException {
+		final InputStream input = new BufferedInputStream(new FileInputStream(file));
+		try {
+			this.read(input, handler);
+		} catch (XMLStreamException e) {
+			throw new IOException("Failed to parse TestNG XML " + file + ": " + e.getMessage(), e);
+		} finally {
+			input.close();
+		}
+	}
+	
+	/**
+	 * Reads a TestNG XML stream.
+	 * @param input TestNG XML
+	 * @param handler handler for the elements found
+	 * @throws XMLStreamException
+	 */
+	public void read(InputStream input, Handler handler) throws XMLStreamException {
+		final XMLStreamReader reader = factory.createXMLStreamReader(input);
+		try {
+			String suite = null;
+			String className = null;
+			while(reader.hasNext()) {
+				final int event = reader.next();
+				if(event == XMLStreamConstants.START_ELEMENT) {
+					final String element = reader.getLocalName();
+					if(SUITE.equals(element)) {
+						suite = reader.getAttributeValue(null, NAME);
+						handler.startSuite(suite);
+					} else if(CLASS.equals(element)) {
+						className = reader.getAttributeValue(null, NAME);
+						handler.startClass(suite, className);
+					} else if(TEST_METHOD.equals(element)) {
+						handler.testMethod(suite, className, 
+								reader.getAttributeValue(null, NAME), 
+								reader.getAttributeValue(null, STATUS));
+					}
+				} else if(event == XMLStreamConstants.END_ELEMENT) {
+					final String element = reader.getLocalName();
+					if(SUITE.equals(element)) {
+						suite = null;
+					} else if(CLASS.equals(element)) {
+						className = null;
+					}
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+}
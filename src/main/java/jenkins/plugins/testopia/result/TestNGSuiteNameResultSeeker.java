@@ -24,16 +24,12 @@
 package jenkins.plugins.testopia.result;
 
 import hudson.Extension;
-import hudson.FilePath;
 import hudson.Launcher;
 import hudson.model.BuildListener;
 import hudson.model.AbstractBuild;
-import hudson.remoting.VirtualChannel;
 
-import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Map;
 
 import jenkins.plugins.testopia.TestopiaSite;
 import jenkins.plugins.testopia.util.Messages;
@@ -41,11 +37,6 @@ import jenkins.plugins.testopia.util.Messages;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.mozilla.testopia.model.Status;
 
-import com.tupilabs.testng.parser.Suite;
-import com.tupilabs.testng.parser.Test;
-import com.tupilabs.testng.parser.TestMethod;
-import com.tupilabs.testng.parser.TestNGParser;
-
 /**
  * <p>Seeks for test results matching each TestNG Suite name with the key 
  * custom field.</p>
@@ -59,15 +50,14 @@ public class TestNGSuiteNameResultSeeker extends AbstractTestNGResultSeeker {
 
 	private static final long serialVersionUID = 3998602647639013614L;
 	
-	private final TestNGParser parser = new TestNGParser();
-	
 	/**
 	 * @param includePattern
 	 * @param markSkippedTestAsBlocked
+	 * @param parallelism
 	 */
 	@DataBoundConstructor
-	public TestNGSuiteNameResultSeeker(String includePattern, boolean markSkippedTestAsBlocked) {
-		super(includePattern, markSkippedTestAsBlocked);
+	public TestNGSuiteNameResultSeeker(String includePattern, boolean markSkippedTestAsBlocked, Integer parallelism) {
+		super(includePattern, markSkippedTestAsBlocked, parallelism);
 	}
 	
 	@Extension
@@ -84,35 +74,15 @@ public class TestNGSuiteNameResultSeeker extends AbstractTestNGResultSeeker {
 	}
 
 	@Override
-	public void seek(TestCaseWrapper[] automatedTestCases, AbstractBuild<?, ?> build, Launcher launcher, final BuildListener listener, TestopiaSite testopia) throws ResultSeekerException {
+	public void seek(AliasIndex automatedTestCases, AbstractBuild<?, ?> build, Launcher launcher, final BuildListener listener, TestopiaSite testopia) throws ResultSeekerException {
 		listener.getLogger().println( Messages.Testopia_TestNG_LookingForTestSuites() );
 		try {
-			final List<Suite> suites = build.getWorkspace().act(new FilePath.FileCallable<List<Suite>>() {
-				private static final long serialVersionUID = 1L;
-
-				private List<Suite> suites = new ArrayList<Suite>();
-				
-				public List<Suite> invoke(File workspace, VirtualChannel channel)
-						throws IOException, InterruptedException {
-					final String[] xmls = TestNGSuiteNameResultSeeker.this.scan(workspace, includePattern, listener);
-					
-					for(String xml : xmls) {
-						final File input = new File(workspace, xml);
-						Suite suite = parser.parse(input);
-						suites.add(suite);
-					}
-					
-					return suites;
-				}
-			});
-			for(Suite suite : suites) {
-				for(TestCaseWrapper automatedTestCase : automatedTestCases) {
-					if(suite.getName().equals(automatedTestCase.getAlias())) {
-						Status status = this.getExecutionStatus(suite);
-						automatedTestCase.setStatusId(status.getValue());
-						//listener.getLogger().println( Messages.Testopia_ResultSeeker_UpdateAutomatedTestCases() );
-						testopia.updateTestCase(automatedTestCase);
-					}
+			final Map<String, String> statuses = this.readStatuses(build, listener, automatedTestCases.getAliases());
+			for(Map.Entry<String, String> entry : statuses.entrySet()) {
+				for(TestCaseWrapper automatedTestCase : automatedTestCases.get(entry.getKey())) {
+					Status status = this.getExecutionStatus(entry.getValue());
+					//listener.getLogger().println( Messages.Testopia_ResultSeeker_UpdateAutomatedTestCases() );
+					this.updateTestCase(automatedTestCase, status, build, listener, testopia);
 				}
 			}
 		} catch (IOException e) {
@@ -122,26 +92,18 @@ public class TestNGSuiteNameResultSeeker extends AbstractTestNGResultSeeker {
 		} 
 	}
 
-	/**
-	 * @param suite
-	 * @return
-	 */
-	private Status getExecutionStatus(Suite suite) {
-		for( Test test : suite.getTests() )	{
-			for( com.tupilabs.testng.parser.Class clazz : test.getClasses() ) {
-				for( TestMethod method : clazz.getTestMethods() ) {
-					if(method.getStatus().equals(FAIL)) {
-						return Status.FAILED; 
-					} else if(method.getStatus().equals(SKIP)) {
-						if(this.isMarkSkippedTestAsBlocked()) { 
-							return Status.BLOCKED;
-						} else {
-							return Status.IDLE;
-						}
-					}
-				}
+	@Override
+	protected TestNGResultReader.Handler createHandler(final TestNGStatuses statuses) {
+		return new TestNGResultReader.Handler() {
+			@Override
+			public void startSuite(String suite) {
+				statuses.merge(suite, PASS);
 			}
-		}
-		return Status.PASSED;
+			@Override
+			public void testMethod(String suite, String className, String methodName, String status) {
+				statuses.merge(suite, status);
+			}
+		};
 	}
+
 }
@@ -0,0 +1,158 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2012> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.testopia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.xmlrpc.client.XmlRpcClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests sending XML-RPC calls through the pooled HTTP client, against a 
+ * local HTTP endpoint.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 1.4
+ */
+public class HttpClientTransportTest {
+
+	private static final String RESPONSE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + 
+			"<methodResponse><params><param><value><string>2.0</string></value></param></params></methodResponse>";
+	
+	private HttpServer server;
+	private URL url;
+	private final List<Request> requests = new ArrayList<Request>();
+	
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/tr_xmlrpc.cgi", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				final Request request = new Request();
+				request.contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+				request.contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+				request.body = read(exchange.getRequestBody());
+				synchronized(requests) {
+					requests.add(request);
+				}
+				final byte[] response = RESPONSE.getBytes("UTF-8");
+				exchange.getResponseHeaders().set("Content-Type", "text/xml");
+				exchange.sendResponseHeaders(200, response.length);
+				final OutputStream out = exchange.getResponseBody();
+				out.write(response);
+				out.close();
+			}
+		});
+		server.start();
+		url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/tr_xmlrpc.cgi");
+	}
+	
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+	
+	@Test
+	public void testCallWithContentLength() throws Exception {
+		final XmlRpcClient client = client(TestopiaClientConfig.parse(null));
+		
+		assertEquals("2.0", client.execute("Testopia.api_version", new Object[0]));
+		assertEquals(1, requests.size());
+		final Request request = requests.get(0);
+		assertNull(request.contentEncoding);
+		assertEquals(String.valueOf(request.body.length), request.contentLength);
+		assertTrue(new String(request.body, "UTF-8").contains("<methodName>Testopia.api_version</methodName>"));
+	}
+	
+	@Test
+	public void testCompressedCallWithCompressedLength() throws Exception {
+		final XmlRpcClient client = client(TestopiaClientConfig.parse(null, "GZIP"));
+		
+		assertEquals("2.0", client.execute("Testopia.api_version", new Object[0]));
+		assertEquals(1, requests.size());
+		final Request request = requests.get(0);
+		assertEquals("gzip", request.contentEncoding);
+		assertEquals(String.valueOf(request.body.length), request.contentLength);
+		final byte[] body = read(new GZIPInputStream(new ByteArrayInputStream(request.body)));
+		assertTrue(new String(body, "UTF-8").contains("<methodName>Testopia.api_version</methodName>"));
+	}
+	
+	@Test
+	public void testConnectionIsReused() throws Exception {
+		final XmlRpcClient client = client(TestopiaClientConfig.parse(null));
+		
+		for(int i = 0; i < 5; i++) {
+			assertEquals("2.0", client.execute("Testopia.api_version", new Object[0]));
+		}
+		assertEquals(5, requests.size());
+	}
+	
+	private XmlRpcClient client(TestopiaClientConfig clientConfig) {
+		final TestopiaConnectionPool pool = new TestopiaConnectionPool(url.toString(), 1, TestopiaSession.DEFAULT_TIMEOUT, clientConfig);
+		final XmlRpcClient client = new XmlRpcClient();
+		client.setConfig(clientConfig.createXmlRpcConfig(url));
+		client.setTransportFactory(new HttpClientTransport.Factory(client, pool));
+		return client;
+	}
+	
+	private static byte[] read(InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[4096];
+		int read;
+		while((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Request received by the endpoint.
+	 */
+	private static class Request {
+		private String contentLength;
+		private String contentEncoding;
+		private byte[] body;
+	}
+	
+}
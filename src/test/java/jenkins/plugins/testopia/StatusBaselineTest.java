@@ -0,0 +1,134 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2012> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.testopia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import jenkins.plugins.testopia.result.TestCaseWrapper;
+
+import org.junit.Test;
+import org.mozilla.testopia.model.TestCase;
+import org.mozilla.testopia.model.TestCaseRun;
+import org.mozilla.testopia.model.TestRun;
+
+/**
+ * Tests comparing test case updates with the statuses of a baseline.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 1.4
+ */
+public class StatusBaselineTest {
+
+	private static final int RUN_ID = 7;
+	private static final int BUILD_ID = 8;
+	private static final int ENV_ID = 9;
+	private static final int PASSED = 2;
+	private static final int FAILED = 3;
+	
+	@Test
+	public void testFromSnapshotKeepsTheCaseRunsOfTheBuildAndEnvironment() {
+		final StatusBaseline baseline = StatusBaseline.fromSnapshot(snapshot(
+				caseRun(30, RUN_ID, BUILD_ID, ENV_ID, PASSED), 
+				caseRun(10, RUN_ID, BUILD_ID, ENV_ID, FAILED), 
+				caseRun(20, RUN_ID, BUILD_ID + 1, ENV_ID, PASSED), 
+				caseRun(40, RUN_ID, BUILD_ID, ENV_ID + 1, PASSED)));
+		
+		assertEquals(2, baseline.size());
+		assertTrue(baseline.isUnchanged(update(30, RUN_ID, BUILD_ID, ENV_ID, PASSED)));
+		assertTrue(baseline.isUnchanged(update(10, RUN_ID, BUILD_ID, ENV_ID, FAILED)));
+		assertFalse(baseline.isUnchanged(update(20, RUN_ID, BUILD_ID, ENV_ID, PASSED)));
+	}
+	
+	@Test
+	public void testWrongRunBuildOrEnvironmentIsChanged() {
+		final StatusBaseline baseline = StatusBaseline.fromSnapshot(snapshot(caseRun(10, RUN_ID, BUILD_ID, ENV_ID, PASSED)));
+		
+		assertFalse(baseline.isUnchanged(update(10, RUN_ID + 1, BUILD_ID, ENV_ID, PASSED)));
+		assertFalse(baseline.isUnchanged(update(10, RUN_ID, BUILD_ID + 1, ENV_ID, PASSED)));
+		assertFalse(baseline.isUnchanged(update(10, RUN_ID, BUILD_ID, ENV_ID + 1, PASSED)));
+		assertFalse(baseline.isUnchanged(update(10, null, BUILD_ID, ENV_ID, PASSED)));
+		assertTrue(baseline.isUnchanged(update(10, RUN_ID, BUILD_ID, ENV_ID, PASSED)));
+	}
+	
+	@Test
+	public void testMissingCaseIsChanged() {
+		final StatusBaseline baseline = StatusBaseline.fromSnapshot(snapshot(caseRun(10, RUN_ID, BUILD_ID, ENV_ID, PASSED)));
+		
+		assertFalse(baseline.isUnchanged(update(11, RUN_ID, BUILD_ID, ENV_ID, PASSED)));
+		assertFalse(baseline.isUnchanged(update(11, RUN_ID, BUILD_ID, ENV_ID, PASSED)));
+	}
+	
+	@Test
+	public void testRepeatedUpdateIsComparedWithTheLatestStatus() {
+		final StatusBaseline baseline = StatusBaseline.fromSnapshot(snapshot(caseRun(10, RUN_ID, BUILD_ID, ENV_ID, PASSED)));
+		
+		assertFalse(baseline.isUnchanged(update(10, RUN_ID, BUILD_ID, ENV_ID, FAILED)));
+		assertTrue(baseline.isUnchanged(update(10, RUN_ID, BUILD_ID, ENV_ID, FAILED)));
+		assertFalse(baseline.isUnchanged(update(10, RUN_ID, BUILD_ID, ENV_ID, PASSED)));
+		assertTrue(baseline.isUnchanged(update(10, RUN_ID, BUILD_ID, ENV_ID, PASSED)));
+	}
+	
+	@Test
+	public void testNoCaseRuns() {
+		final TestRunSnapshot snapshot = new TestRunSnapshot(testRun(), new TestCase[0], null);
+		
+		assertFalse(snapshot.hasCaseRuns());
+		assertEquals(0, StatusBaseline.fromSnapshot(snapshot).size());
+	}
+	
+	private static TestRunSnapshot snapshot(TestCaseRun... caseRuns) {
+		return new TestRunSnapshot(testRun(), new TestCase[0], caseRuns);
+	}
+	
+	private static TestRun testRun() {
+		final TestRun testRun = new TestRun();
+		testRun.setId(RUN_ID);
+		testRun.setBuild(String.valueOf(BUILD_ID));
+		testRun.setEnvironment(String.valueOf(ENV_ID));
+		return testRun;
+	}
+	
+	private static TestCaseRun caseRun(int caseId, int runId, int buildId, int envId, int statusId) {
+		final TestCaseRun caseRun = new TestCaseRun();
+		caseRun.setId(1000 + caseId);
+		caseRun.setTestCaseId(caseId);
+		caseRun.setRunId(runId);
+		caseRun.setBuildId(buildId);
+		caseRun.setEnvironmentId(envId);
+		caseRun.setStatusId(statusId);
+		return caseRun;
+	}
+	
+	private static TestCaseWrapper update(int caseId, Integer runId, int buildId, int envId, int statusId) {
+		final TestCaseWrapper tc = new TestCaseWrapper();
+		tc.setId(caseId);
+		tc.setRunId(runId);
+		tc.setBuildId(buildId);
+		tc.setEnvId(envId);
+		tc.setStatusId(statusId);
+		return tc;
+	}
+	
+}
@@ -0,0 +1,120 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2012> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.testopia;
+
+import hudson.Launcher;
+import hudson.model.Action;
+import hudson.model.BuildListener;
+import hudson.model.AbstractBuild;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.StreamBuildListener;
+import hudson.tasks.BuildStep;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import jenkins.plugins.testopia.result.ResultSeeker;
+import jenkins.plugins.testopia.result.TestCaseWrapper;
+
+import org.jvnet.hudson.test.HudsonTestCase;
+import org.jvnet.hudson.test.TestBuilder;
+
+/**
+ * Tests the environment contributed to the iterative build steps: a single 
+ * {@link TestCaseEnvironmentAction} is on the build while the test cases are 
+ * iterated, whatever their number, and none is left afterwards.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 1.4
+ */
+public class TestopiaBuilderIterationTest extends HudsonTestCase {
+
+	public void testSequentialIteration() throws Exception {
+		this.assertSingleContributor(10, null);
+		this.assertSingleContributor(500, null);
+	}
+	
+	public void testParallelIteration() throws Exception {
+		this.assertSingleContributor(10, 4);
+		this.assertSingleContributor(500, 4);
+	}
+	
+	private void assertSingleContributor(int testCaseCount, Integer iterationConcurrency) throws Exception {
+		final FreeStyleProject project = createFreeStyleProject();
+		final FreeStyleBuild build = project.scheduleBuild2(0).get();
+		final List<Integer> contributors = Collections.synchronizedList(new ArrayList<Integer>());
+		final List<String> testCaseIds = Collections.synchronizedList(new ArrayList<String>());
+		final BuildStep step = new TestBuilder() {
+			@Override
+			public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) 
+					throws InterruptedException, IOException {
+				contributors.add(countContributors(build));
+				testCaseIds.add(build.getEnvironment(listener).get("TESTOPIA_TESTCASE_ID"));
+				return true;
+			}
+		};
+		final TestopiaBuilder builder = new TestopiaBuilder(null, 1, null, null, 
+				Collections.singletonList(step), null, Boolean.FALSE, Collections.<ResultSeeker>emptyList(), 
+				null, null, null, iterationConcurrency, null, null, null);
+		final BuildListener listener = new StreamBuildListener(new ByteArrayOutputStream());
+		
+		builder.executeIterativeBuildSteps(testCases(testCaseCount), build, new Launcher.LocalLauncher(listener), listener);
+		
+		assertEquals(testCaseCount, contributors.size());
+		for(Integer count : contributors) {
+			assertEquals("Environment contributors on the build during iteration", 1, count.intValue());
+		}
+		// each test case saw its own variables
+		for(int i = 1; i <= testCaseCount; i++) {
+			assertTrue("Missing test case " + i, testCaseIds.contains(Integer.toString(i)));
+		}
+		assertEquals("Environment contributors left on the build", 0, countContributors(build));
+	}
+	
+	private static int countContributors(AbstractBuild<?, ?> build) {
+		int count = 0;
+		for(Action action : build.getActions()) {
+			if(action instanceof TestCaseEnvironmentAction) {
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	private static TestCaseWrapper[] testCases(int count) {
+		final TestCaseWrapper[] testCases = new TestCaseWrapper[count];
+		for(int i = 0; i < count; i++) {
+			final TestCaseWrapper testCase = new TestCaseWrapper();
+			testCase.setId(i + 1);
+			testCase.setSummary("Test case " + (i + 1));
+			testCases[i] = testCase;
+		}
+		return testCases;
+	}
+	
+}
@@ -0,0 +1,251 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2012> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.testopia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import hudson.model.TaskListener;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import jenkins.plugins.testopia.result.TestCaseWrapper;
+
+import org.apache.xmlrpc.XmlRpcException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests writing the journal of a build, and sending it with a fake sender.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 1.4
+ */
+public class UpdateSpoolTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private File buildDir;
+	private File registry;
+	
+	@Before
+	public void setUp() throws IOException {
+		buildDir = folder.newFolder("build");
+		registry = new File(folder.getRoot(), UpdateSpool.REGISTRY_FILE_NAME);
+	}
+	
+	@Test
+	public void testJournalRoundTrip() throws IOException {
+		final UpdateSpool spool = spool(5);
+		
+		assertEquals(5, spool.getRecords());
+		assertTrue(UpdateSpool.readRegistry(registry).contains(spool.getFile().getAbsolutePath()));
+		final UpdateSpool.Records records = UpdateSpool.read(spool.getFile(), 0);
+		assertEquals("testopia", records.getInstallationName());
+		assertEquals(5, records.size());
+		final List<TestCaseWrapper> updates = records.get(0, 5);
+		for(int i = 0; i < 5; i++) {
+			assertEquals(Integer.valueOf(100 + i), updates.get(i).getId());
+			assertEquals(Integer.valueOf(7), updates.get(i).getRunId());
+			assertEquals(Integer.valueOf(8), updates.get(i).getBuildId());
+			assertEquals(Integer.valueOf(9), updates.get(i).getEnvId());
+			assertEquals(Integer.valueOf(2 + i % 2), updates.get(i).getStatusId());
+		}
+		assertEquals(2, UpdateSpool.read(spool.getFile(), 3).size());
+	}
+	
+	@Test
+	public void testEmptyJournalIsDeleted() throws IOException {
+		final UpdateSpool spool = spool(0);
+		
+		assertFalse(spool.getFile().exists());
+		assertFalse(registry.exists());
+	}
+	
+	@Test
+	public void testCloseTwice() throws IOException {
+		final UpdateSpool spool = spool(1);
+		spool.close();
+		
+		assertEquals(1, UpdateSpool.readRegistry(registry).size());
+	}
+	
+	@Test
+	public void testTruncatedRecordIsIgnored() throws IOException {
+		final UpdateSpool spool = spool(3);
+		final RandomAccessFile file = new RandomAccessFile(spool.getFile(), "rw");
+		try {
+			file.setLength(file.length() - 7);
+		} finally {
+			file.close();
+		}
+		
+		final UpdateSpool.Records records = UpdateSpool.read(spool.getFile(), 0);
+		assertEquals(2, records.size());
+		assertEquals(Integer.valueOf(101), records.get(1, 2).get(0).getId());
+		assertEquals(0, UpdateSpool.read(spool.getFile(), 2).size());
+	}
+	
+	@Test
+	public void testResumeFromProgress() throws IOException {
+		final UpdateSpool spool = spool(250);
+		final FakeSender sender = new FakeSender();
+		sender.transientAt = 130;
+		
+		assertFalse(UpdateSpool.drain(spool.getFile(), factory(sender), TaskListener.NULL));
+		assertEquals(130, UpdateSpool.readProgress(new File(buildDir, UpdateSpool.PROGRESS_FILE_NAME)));
+		assertTrue(spool.getFile().exists());
+		
+		sender.transientAt = -1;
+		sender.sent.clear();
+		assertTrue(UpdateSpool.drain(spool.getFile(), factory(sender), TaskListener.NULL));
+		assertEquals(120, sender.sent.size());
+		assertEquals(Integer.valueOf(230), sender.sent.get(0));
+		assertFalse(spool.getFile().exists());
+		assertFalse(new File(buildDir, UpdateSpool.PROGRESS_FILE_NAME).exists());
+	}
+	
+	@Test
+	public void testWholeBatchFailureKeepsProgress() throws IOException {
+		final UpdateSpool spool = spool(150);
+		final FakeSender sender = new FakeSender();
+		sender.downAfter = 1;
+		
+		assertFalse(UpdateSpool.drain(spool.getFile(), factory(sender), TaskListener.NULL));
+		assertEquals(100, UpdateSpool.readProgress(new File(buildDir, UpdateSpool.PROGRESS_FILE_NAME)));
+	}
+	
+	@Test
+	public void testPermanentFailureIsSkipped() throws IOException {
+		final UpdateSpool spool = spool(10);
+		final FakeSender sender = new FakeSender();
+		sender.rejectedAt = 4;
+		
+		assertTrue(UpdateSpool.drain(spool.getFile(), factory(sender), TaskListener.NULL));
+		assertEquals(9, sender.sent.size());
+		assertFalse(spool.getFile().exists());
+		final File failed = new File(buildDir, UpdateSpool.FAILED_FILE_NAME);
+		assertTrue(failed.exists());
+		final List<String> lines = readLines(failed);
+		assertEquals(1, lines.size());
+		assertTrue(lines.get(0).startsWith("case_id=104 "));
+	}
+	
+	@Test
+	public void testDrainAllUnregistersSentJournals() throws IOException {
+		spool(3);
+		
+		UpdateSpool.drainAll(registry, factory(new FakeSender()), TaskListener.NULL);
+		
+		assertFalse(registry.exists());
+	}
+	
+	/**
+	 * Writes a journal of updates to test cases 100, 101... of run 7, 
+	 * build 8, environment 9, and closes it.
+	 */
+	private UpdateSpool spool(int count) throws IOException {
+		final UpdateSpool spool = new UpdateSpool(buildDir, "testopia", registry);
+		final List<TestCaseWrapper> batch = new ArrayList<TestCaseWrapper>();
+		for(int i = 0; i < count; i++) {
+			final TestCaseWrapper tc = new TestCaseWrapper();
+			tc.setId(100 + i);
+			tc.setRunId(7);
+			tc.setBuildId(8);
+			tc.setEnvId(9);
+			tc.setStatusId(2 + i % 2);
+			batch.add(tc);
+		}
+		spool.append(batch);
+		spool.close();
+		return spool;
+	}
+	
+	private static List<String> readLines(File file) throws IOException {
+		final List<String> lines = new ArrayList<String>();
+		final BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+	
+	private static UpdateSpool.Sender.Factory factory(final UpdateSpool.Sender sender) {
+		return new UpdateSpool.Sender.Factory() {
+			@Override
+			UpdateSpool.Sender create(String installationName) {
+				return sender;
+			}
+		};
+	}
+	
+	/**
+	 * Records the test case IDs sent. Fails the update of the test case at 
+	 * the given offset, transiently or permanently, or the whole batches 
+	 * after the given number of batches.
+	 */
+	private static class FakeSender implements UpdateSpool.Sender {
+		
+		private final List<Integer> sent = new ArrayList<Integer>();
+		private int transientAt = -1;
+		private int rejectedAt = -1;
+		private int downAfter = -1;
+		private int batches = 0;
+		
+		public List<RuntimeException> send(List<TestCaseWrapper> batch) {
+			if(batches++ == downAfter) {
+				throw new RuntimeException("Testopia down", new XmlRpcException("Failed to read server's response", new IOException()));
+			}
+			final RuntimeException[] failures = new RuntimeException[batch.size()];
+			for(int i = 0; i < batch.size(); i++) {
+				final int offset = batch.get(i).getId() - 100;
+				if(offset == transientAt) {
+					failures[i] = new RuntimeException("Connection reset", new XmlRpcException("Connection reset", new IOException()));
+				} else if(offset == rejectedAt) {
+					failures[i] = new RuntimeException("Invalid status", new XmlRpcException(100, "Invalid status"));
+				} else {
+					sent.add(batch.get(i).getId());
+				}
+			}
+			return Arrays.asList(failures);
+		}
+		
+	}
+	
+}
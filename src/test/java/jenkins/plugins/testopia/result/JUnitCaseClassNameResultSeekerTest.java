@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) <2012> <Bruno P. Kinoshita>
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package jenkins.plugins.testopia.result;
+
+import static org.junit.Assert.assertEquals;
+import hudson.tasks.junit.CaseResult;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests the reduction of JUnit case results to one result per class name.
+ * 
+ * @author Bruno P. Kinoshita - http://www.kinoshita.eti.br
+ * @since 1.4
+ */
+public class JUnitCaseClassNameResultSeekerTest {
+
+	@Test
+	public void testAnyFailureWinsAcrossSuites() {
+		final List<List<CaseResult>> suites = new ArrayList<List<CaseResult>>();
+		suites.add(suite(passed("A"), passed("B"), passed("C")));
+		suites.add(suite(failed("A"), passed("B")));
+		suites.add(suite(passed("A"), failed("C"), passed("C")));
+		
+		final Map<String, CaseResult> classResults = reduce(suites);
+		
+		assertEquals(3, classResults.size());
+		assertEquals(1, classResults.get("A").getFailCount());
+		assertEquals(0, classResults.get("B").getFailCount());
+		assertEquals(1, classResults.get("C").getFailCount());
+	}
+	
+	@Test
+	public void testSkippedCasesAreIgnored() {
+		final List<List<CaseResult>> suites = new ArrayList<List<CaseResult>>();
+		suites.add(suite(skipped("A"), passed("B")));
+		suites.add(suite(skipped("B")));
+		
+		final Map<String, CaseResult> classResults = reduce(suites);
+		
+		assertEquals(1, classResults.size());
+		assertEquals(0, classResults.get("B").getFailCount());
+	}
+	
+	private static Map<String, CaseResult> reduce(List<List<CaseResult>> suites) {
+		final Map<String, CaseResult> classResults = new LinkedHashMap<String, CaseResult>();
+		for(List<CaseResult> suite : suites) {
+			for(CaseResult caseResult : suite) {
+				JUnitCaseClassNameResultSeeker.reduce(classResults, caseResult);
+			}
+		}
+		return classResults;
+	}
+	
+	private static List<CaseResult> suite(CaseResult... caseResults) {
+		final List<CaseResult> suite = new ArrayList<CaseResult>();
+		for(CaseResult caseResult : caseResults) {
+			suite.add(caseResult);
+		}
+		return suite;
+	}
+	
+	private static CaseResult passed(String className) {
+		return caseResult(className, 0, false);
+	}
+	
+	private static CaseResult failed(String className) {
+		return caseResult(className, 1, false);
+	}
+	
+	private static CaseResult skipped(String className) {
+		return caseResult(className, 0, true);
+	}
+	
+	@SuppressWarnings("serial")
+	private static CaseResult caseResult(final String className, final int failCount, final boolean skipped) {
+		return new CaseResult(null, "test", null) {
+			@Override
+			public String getClassName() {
+				return className;
+			}
+			@Override
+			public int getFailCount() {
+				return failCount;
+			}
+			@Override
+			public boolean isSkipped() {
+				return skipped;
+			}
+		};
+	}
+	
+}